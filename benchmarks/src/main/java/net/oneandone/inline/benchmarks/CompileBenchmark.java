@@ -0,0 +1,61 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.benchmarks;
+
+import net.oneandone.inline.Cli;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/** Defining and compiling clis, i.e. the startup costs paid before the first command runs. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CompileBenchmark {
+    @Param({ "1", "10", "50" })
+    public int depth;
+
+    @Benchmark
+    public Cli normal() {
+        return Samples.normal();
+    }
+
+    @Benchmark
+    public Cli baseClass() {
+        return Samples.baseClass();
+    }
+
+    @Benchmark
+    public Cli serviceManager() {
+        return Samples.serviceManager();
+    }
+
+    @Benchmark
+    public Cli single() {
+        return Samples.single();
+    }
+
+    @Benchmark
+    public Cli nested() {
+        return Samples.nested(depth);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.benchmarks;
+
+import net.oneandone.inline.Cli;
+import net.oneandone.inline.internal.ContextBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Running commands on clis compiled in advance: parsing, binding, instantiation and command invocation. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark {
+    private Cli normal;
+    private Cli baseClass;
+    private Cli serviceManager;
+    private ContextBuilder single;
+    private Map<String, String> defaults;
+
+    @Setup
+    public void setup() {
+        normal = Samples.normal();
+        baseClass = Samples.baseClass();
+        serviceManager = Samples.serviceManager();
+        single = Samples.single().commands.get(0).getBuilder();
+        defaults = new HashMap<>();
+    }
+
+    @Benchmark
+    public int normalFirst() {
+        return normal.run("first", "-number", "3", "one", "two", "-v", "three");
+    }
+
+    @Benchmark
+    public int normalSecond() {
+        return normal.run("second");
+    }
+
+    @Benchmark
+    public int baseClass() {
+        return baseClass.run("my", "-batch", "one", "two", "three");
+    }
+
+    @Benchmark
+    public int serviceManagerList() {
+        return serviceManager.run("list");
+    }
+
+    @Benchmark
+    public int serviceManagerStart() {
+        return serviceManager.run("start", "apache");
+    }
+
+    /** binding only - Single prints to System.out when run */
+    @Benchmark
+    public Object singleBind() throws Throwable {
+        return single.run(defaults, "first", "-number", "42", "a", "b");
+    }
+}
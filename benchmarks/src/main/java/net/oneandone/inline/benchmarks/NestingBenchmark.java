@@ -0,0 +1,64 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.benchmarks;
+
+import net.oneandone.inline.Cli;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** Dispatching a command nested in deep begin() contexts. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NestingBenchmark {
+    @Param({ "1", "10", "50" })
+    public int depth;
+
+    private Cli cli;
+    private List<String> withoutOptions;
+    private List<String> withOptions;
+
+    @Setup
+    public void setup() {
+        cli = Samples.nested(depth);
+        withoutOptions = new ArrayList<>();
+        withoutOptions.add("leaf");
+        withOptions = new ArrayList<>(withoutOptions);
+        for (int i = 0; i < depth; i++) {
+            withOptions.add("-o" + i + "=" + i);
+        }
+    }
+
+    @Benchmark
+    public int defaults() {
+        return cli.run(withoutOptions);
+    }
+
+    @Benchmark
+    public int options() {
+        return cli.run(withOptions);
+    }
+}
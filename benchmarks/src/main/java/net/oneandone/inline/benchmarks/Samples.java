@@ -0,0 +1,106 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.benchmarks;
+
+import net.oneandone.inline.Cli;
+import net.oneandone.inline.Console;
+import net.oneandone.inline.samples.BaseClass;
+import net.oneandone.inline.samples.Normal;
+import net.oneandone.inline.samples.ServiceManager;
+import net.oneandone.inline.samples.Single;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+/** Defines the sample clis from the Inline tests, with a console that discards all output. */
+public class Samples {
+    public static Console console() {
+        return new Console(new PrintWriter(new NullWriter()), new PrintWriter(new NullWriter()), new ByteArrayInputStream(new byte[0]));
+    }
+
+    public static Cli normal() {
+        return Cli.create(console(), "demo help")
+                .add(Normal.FirstCommand.class,   "first -flag=false -number=7 first remaining*")
+                .add(Normal.SecondCommand.class,  "second");
+    }
+
+    public static Cli baseClass() {
+        return Cli.create(console(), "demo help")
+                .base(BaseClass.BaseCommand.class, "-batch { setBatch(batch) }")
+                  .add(BaseClass.MyCommand.class,  "my -flag=false -number=7 first remaining*");
+    }
+
+    public static Cli serviceManager() {
+        Cli cli;
+
+        cli = Cli.create(console(), "service manager");
+        cli.begin("manager", new ServiceManager(), "");
+          cli.add(ServiceManager.Ls.class, "list");
+          cli.begin("manager.service", "service" );
+            cli.add(ServiceManager.Start.class, "start");
+            cli.add(ServiceManager.Stop.class, "stop");
+        return cli;
+    }
+
+    public static Cli single() {
+        try {
+            return Cli.single(console(), Single.class, "ignored -flag=true -number first remaining*");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Cli with a "leaf" command nested in the specified number of contexts, each defining an option -o&lt;level&gt; */
+    public static Cli nested(int depth) {
+        Cli cli;
+
+        cli = Cli.create(console(), "nested");
+        for (int i = 0; i < depth; i++) {
+            cli.begin(Level.class, "-o" + i + "=0");
+        }
+        cli.add(Leaf.class, "leaf");
+        return cli;
+    }
+
+    public static class Level {
+        public final int value;
+
+        public Level(int value) {
+            this.value = value;
+        }
+    }
+
+    public static class Leaf {
+        public void run() {
+        }
+    }
+
+    private static class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.benchmarks;
+
+import net.oneandone.inline.internal.ContextBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Binding large lists of values to a "name*" argument. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VariadicBenchmark {
+    @Param({ "10", "1000", "100000" })
+    public int size;
+
+    private ContextBuilder builder;
+    private Map<String, String> defaults;
+    private List<String> args;
+
+    @Setup
+    public void setup() {
+        builder = Samples.normal().get("first").getBuilder();
+        defaults = new HashMap<>();
+        args = new ArrayList<>();
+        args.add("first");
+        for (int i = 0; i < size; i++) {
+            args.add("value" + i);
+        }
+    }
+
+    @Benchmark
+    public Object bind() throws Throwable {
+        return builder.run(defaults, args);
+    }
+}
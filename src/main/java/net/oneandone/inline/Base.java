@@ -17,11 +17,18 @@ package net.oneandone.inline;
 
 import net.oneandone.inline.internal.InvalidCliException;
 import net.oneandone.inline.internal.Mapping;
+import net.oneandone.inline.internal.Source;
 
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+/**
+ * Syntax and mapping inherited by all commands added while this base is active. Parsed once when created; commands
+ * merge the parsed sources and mapping with their own.
+ */
 public class Base {
+    public static final Base ROOT = new Base(Collections.emptyList(), new Mapping(), "", "");
+
     public static Base create(Base parent, Class<?> base, String definition) {
         int idx;
         String syntax;
@@ -38,56 +45,59 @@ public class Base {
             mapping = definition.substring(idx + 1, definition.length() - 1).trim();
             syntax = definition.substring(0, idx).trim();
         }
-        Mapping.parse(mapping, base);
-        return new Base(parent, syntax, mapping);
-
+        return new Base(parent.sources(Source.forSyntax(syntax)), parent.mapping(mapping, base),
+                parent.fullSyntax(syntax + ' '), parent.fullMapping(mapping + ' '));
     }
 
-    private final Base parent;
-    private final String syntax;
-    private final String mapping;
+    /** sources of all parent bases followed by the sources of this base */
+    private final List<Source> sources;
+    /** mappings of all parent bases and of this base; never modified; null to resolve against each command class */
+    private final Mapping mapping;
+    /** syntax definitions of all parent bases and of this base, each followed by a space */
+    private final String syntaxes;
+    /** mapping definitions of all parent bases and of this base, each followed by a space */
+    private final String mappings;
 
+    /**
+     * @deprecated use {@link #ROOT} and {@link #create(Base, Class, String)}; mappings of bases created with this
+     * constructor are resolved against each command class, as in 1.2.0
+     */
+    @Deprecated
     public Base(Base parent, String syntax, String mapping) {
-        this.parent = parent;
-        this.syntax = syntax;
+        this(parent == null ? Source.forSyntax(syntax) : parent.sources(Source.forSyntax(syntax)), null,
+                (parent == null ? "" : parent.syntaxes) + syntax + ' ',
+                (parent == null ? "" : parent.mappings) + mapping + ' ');
+    }
+
+    private Base(List<Source> sources, Mapping mapping, String syntaxes, String mappings) {
+        this.sources = sources;
         this.mapping = mapping;
+        this.syntaxes = syntaxes;
+        this.mappings = mappings;
     }
 
+    /** @deprecated use {@link #sources(List)} */
+    @Deprecated
     public String fullSyntax(String extraSyntax) {
-        StringBuilder result;
-
-        result = new StringBuilder();
-        for (Base base : stack()) {
-            result.append(base.syntax);
-            result.append(' ');
-        }
-        result.append(extraSyntax);
-        return result.toString();
+        return syntaxes + extraSyntax;
     }
 
+    /** @deprecated use {@link #mapping(String, Class)} */
+    @Deprecated
     public String fullMapping(String extraMapping) {
-        StringBuilder result;
-
-        result = new StringBuilder();
-        for (Base base : stack()) {
-            result.append(base.mapping);
-            result.append(' ');
-        }
-        result.append(extraMapping);
-        return result.toString();
+        return mappings + extraMapping;
     }
 
-    private List<Base> stack() {
-        List<Base> result;
-
-        result = new ArrayList<>();
-        stack(result);
-        return result;
+    /** @return sources of this base followed by the extra sources */
+    public List<Source> sources(List<Source> extraSources) {
+        return Source.concat(sources, extraSources);
     }
-    private void stack(List<Base> result) {
-        if (parent != null) {
-            parent.stack(result);
+
+    /** @return mapping of this base plus the extra mapping, resolved against clazz */
+    public Mapping mapping(String extraMapping, Class<?> clazz) {
+        if (mapping == null) {
+            return Mapping.parse(fullMapping(extraMapping), clazz);
         }
-        result.add(this);
+        return Mapping.parse(mapping, extraMapping, clazz);
     }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Runs many invocations of a cli concurrently; see Cli.runAll. */
+class Batch {
+    private final Cli cli;
+    private final Console console;
+    private final Semaphore permits;
+
+    /** @param console to print buffered outputs to */
+    Batch(Cli cli, Console console, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("invalid concurrency: " + concurrency);
+        }
+        this.cli = cli;
+        this.console = console;
+        this.permits = new Semaphore(concurrency);
+    }
+
+    /** @return first non-zero exit code in invocation order, 0 if all invocations succeeded */
+    public int run(List<List<String>> invocations) throws InterruptedException {
+        ExecutorService executor;
+        List<Future<Result>> futures;
+        Result result;
+        int exitCode;
+
+        executor = newExecutor(permits.availablePermits());
+        try {
+            futures = new ArrayList<>(invocations.size());
+            for (List<String> args : invocations) {
+                futures.add(executor.submit(() -> invoke(args)));
+            }
+            exitCode = 0;
+            for (Future<Result> future : futures) {
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                console.info.print(result.info);
+                console.info.flush();
+                console.error.print(result.error);
+                console.error.flush();
+                if (exitCode == 0) {
+                    exitCode = result.exitCode;
+                }
+            }
+            return exitCode;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Result invoke(List<String> args) throws InterruptedException {
+        StringWriter info;
+        StringWriter error;
+        Console buffered;
+        int exitCode;
+
+        permits.acquire();
+        try {
+            info = new StringWriter();
+            error = new StringWriter();
+            buffered = new Console(new PrintWriter(info, true), new PrintWriter(error, true),
+                    new ByteArrayInputStream(new byte[0]), console.getWorkingDirectory(), console.getEnv());
+            buffered.setVerbose(console.getVerbose());
+            buffered.setStacktraces(console.getStacktraces());
+            buffered.setTiming(console.getTiming());
+            try {
+                exitCode = cli.run(buffered, args);
+            } catch (RuntimeException | Error e) {
+                e.printStackTrace(buffered.error);
+                exitCode = 1;
+            }
+            buffered.info.flush();
+            buffered.error.flush();
+            return new Result(exitCode, info.toString(), error.toString());
+        } finally {
+            permits.release();
+        }
+    }
+
+    /** Virtual threads if the jvm has them; concurrency is limited by permits anyway. */
+    private static ExecutorService newExecutor(int concurrency) {
+        Method method;
+
+        try {
+            method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return Executors.newFixedThreadPool(concurrency);
+        }
+        try {
+            return (ExecutorService) method.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class Result {
+        public final int exitCode;
+        public final String info;
+        public final String error;
+
+        Result(int exitCode, String info, String error) {
+            this.exitCode = exitCode;
+            this.info = info;
+            this.error = error;
+        }
+    }
+}
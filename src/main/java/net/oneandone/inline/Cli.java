@@ -17,57 +17,103 @@ package net.oneandone.inline;
 
 import net.oneandone.inline.commands.Help;
 import net.oneandone.inline.commands.PackageVersion;
+import net.oneandone.inline.internal.Actuals;
+import net.oneandone.inline.internal.ArgumentFiles;
 import net.oneandone.inline.internal.Command;
 import net.oneandone.inline.internal.Context;
 import net.oneandone.inline.internal.ContextBuilder;
 import net.oneandone.inline.internal.Handle;
 import net.oneandone.inline.internal.InvalidCliException;
 import net.oneandone.inline.internal.Mapping;
+import net.oneandone.inline.internal.Primitive;
+import net.oneandone.inline.internal.ReflectConfig;
 import net.oneandone.inline.internal.Repository;
+import net.oneandone.inline.internal.Stopwatch;
+import net.oneandone.inline.util.LruCache;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Method;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
  * A command line interface. Define available command with begin(), add() and end(). Then invoke run() to actually invoke them.
  */
-public class Cli {
+public class Cli implements AutoCloseable {
     public static Cli create(String help) {
-        Console console;
+        return create(Console.create(), help);
+    }
+
+    public static Cli create(Console console, String help) {
         Cli cli;
 
-        console = Console.create();
         cli = new Cli(new Repository(), console::handleException);
-        cli.begin(console, "-v -e  { setVerbose(v) setStacktraces(e) }")
-              .addDefault(new Help(console, help), "help")
+        cli.console = console;
+        cli.help = new Help(console, help);
+        cli.helpText = help;
+        cli.timingOption = true;
+        cli.begin(console, "-v -e -timing { setVerbose(v) setStacktraces(e) setTiming(timing) }")
+              .addDefault(cli.help, "help")
               .add(PackageVersion.class, "version");
         return cli;
     }
 
     public static Cli single(Class<?> command, String syntax) throws IOException {
-        Console console;
+        return single(Console.create(), command, syntax);
+    }
+
+    public static Cli single(Console console, Class<?> command, String syntax) throws IOException {
         Cli cli;
 
-        console = Console.create();
         cli = new Cli(new Repository(), console::handleException);
-        cli.begin(console, "-v -e  { setVerbose(v) setStacktraces(e) }");
+        cli.console = console;
+        cli.timingOption = true;
+        cli.begin(console, "-v -e -timing { setVerbose(v) setStacktraces(e) setTiming(timing) }");
         cli.add(command, syntax);
         return cli;
     }
 
     protected final Repository repository;
     private final Function<Throwable, Integer> exceptionHandler;
+    /** read-only view of all commands, in the order they were added; e.g. to collect command names for bash completion */
     public final List<Command> commands;
+    private final List<Command> commandList;
+    private final Map<String, Command> commandMap;
+    /** all contexts passed to begin, in definition order */
+    private final List<Context> contexts;
     private Context currentContext;
     private Base currentBase;
     private Command defaultCommand;
     private final Map<String, String> defaults;
+    private boolean lazy;
+    private boolean argumentFiles;
+    /** null to convert arguments sequentially */
+    private Executor conversionExecutor;
+    private int memoSize;
+    /** null for no expiry */
+    private Duration memoTtl;
+    /** console passed to create or single, replaced by the console passed to run; null if none */
+    private Console console;
+    /** help command instance of create, replaced when running with a different console; null if none */
+    private Help help;
+    private String helpText;
+    private final List<Consumer<Timing>> listeners;
+    /** true if the console context has the -timing option of create and single */
+    private boolean timingOption;
 
     public Cli() {
         this(e -> { e.printStackTrace(); return -1; });
@@ -79,12 +125,96 @@ public class Cli {
 
     public Cli(Repository repository, Function<Throwable, Integer> exceptionHandler) {
         this.repository = repository;
-        this.commands = new ArrayList<>();
+        this.commandList = new ArrayList<>();
+        this.commands = Collections.unmodifiableList(commandList);
+        this.commandMap = new HashMap<>();
+        this.contexts = new ArrayList<>();
         this.currentContext = null;
-        this.currentBase = new Base(null, "", "");
+        this.currentBase = Base.ROOT;
         this.defaultCommand = null;
         this.exceptionHandler = exceptionHandler;
         this.defaults = new HashMap<>();
+        this.lazy = false;
+        this.argumentFiles = false;
+        this.conversionExecutor = null;
+        this.memoSize = 100;
+        this.memoTtl = null;
+        this.console = null;
+        this.help = null;
+        this.helpText = null;
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.timingOption = false;
+    }
+
+    /**
+     * In lazy mode, commands are compiled when used for the first time, not when added. Saves startup time for clis
+     * with many commands. Definition errors are reported when a command is used; invoke validate() to check them.
+     * Affects commands added afterwards.
+     */
+    public Cli lazy(boolean lazy) {
+        this.lazy = lazy;
+        return this;
+    }
+
+    /**
+     * Enables argument files for list arguments (e.g. "name*"): "@file" is replaced by the lines of the file, "-" by
+     * the lines of standard input, "@@foo" is the literal value "@foo". Values are read lazily and passed one by one
+     * to iterated setter methods and Iterable parameters, so memory usage does not depend on the number of values.
+     * Each reference counts as one value when checking the cardinality of the argument.
+     */
+    public Cli argumentFiles(boolean enabled) {
+        this.argumentFiles = enabled;
+        return this;
+    }
+
+    /**
+     * Converts the arguments of a context concurrently on the specified executor, e.g. ForkJoinPool.commonPool(), before
+     * the context object is instantiated. For commands with several arguments of slow types, e.g. urls validated via
+     * dns; parsers have to be thread-safe. Values are still stored in declaration order, and if several arguments are
+     * invalid, the first one is reported.
+     *
+     * @param executor null to convert sequentially, which is the default
+     */
+    public Cli parallelConversion(Executor executor) {
+        this.conversionExecutor = executor;
+        return this;
+    }
+
+    /**
+     * Adds a listener that gets the Timing of every invocation that returns an exit code, e.g. to feed a metrics
+     * system. Listeners are invoked by the thread that ran the command, after it has finished.
+     */
+    public Cli listener(Consumer<Timing> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    /**
+     * Configures the cache of Scope.MEMOIZED contexts begun afterwards: at most maxSize objects per context, the least
+     * recently used object is evicted first. Defaults to 100 objects without expiry.
+     *
+     * @param ttl null for no expiry
+     */
+    public Cli memoize(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("invalid max size: " + maxSize);
+        }
+        this.memoSize = maxSize;
+        this.memoTtl = ttl;
+        return this;
+    }
+
+    /** @return caches of all memoized contexts by context name, e.g. to report hits and misses or to clear them */
+    public Map<String, LruCache<?, ?>> memos() {
+        Map<String, LruCache<?, ?>> result;
+
+        result = new LinkedHashMap<>();
+        for (Context context : contexts) {
+            if (context.memo != null) {
+                result.put(context.name, context.memo);
+            }
+        }
+        return result;
     }
 
     public Cli primitive(Class<?> clazz, String expected, Object dflt, Function<String, Object> f) {
@@ -92,6 +222,51 @@ public class Cli {
         return this;
     }
 
+    /**
+     * Registers a parser for all subclasses or implementations of supertype, e.g. for an interface. The parser gets the
+     * concrete class as first argument; explicit registrations via primitive() take precedence.
+     */
+    public Cli primitives(Class<?> supertype, String expected, BiFunction<Class<?>, String, Object> parser) {
+        repository.registerSupertype(supertype, clazz -> new Primitive(clazz, expected, null, str -> parser.apply(clazz, str)));
+        return this;
+    }
+
+    /**
+     * Caches parse results of the primitive for clazz, e.g. for expensive lookups repeated in list arguments. Parsed
+     * objects are shared, so they have to be immutable. Invoke it after registering the primitive and before adding
+     * contexts and commands that use it. Affects exactly clazz, not its subclasses; not for bulk-converting primitives.
+     *
+     * @param ttl null for no expiry
+     */
+    public Cli cachePrimitive(Class<?> clazz, int maxSize, Duration ttl) {
+        repository.cache(clazz, maxSize, ttl);
+        return this;
+    }
+
+    /**
+     * Converts all values of list and array arguments of type clazz with one invocation of bulk, e.g. to look them up
+     * with a single database query. bulk returns the converted values in the order of the strings; exceptions are
+     * reported as invalid arguments. Single values and values streamed from argument files are parsed one by one.
+     */
+    public Cli bulkPrimitive(Class<?> clazz, Function<List<String>, List<?>> bulk) {
+        repository.bulk(clazz, bulk);
+        return this;
+    }
+
+    /**
+     * Parses the values of list and array arguments of type clazz concurrently, for cpu-bound parsers. The parser has
+     * to be thread-safe. If several values are invalid, the first one is reported.
+     */
+    public Cli parallelPrimitive(Class<?> clazz) {
+        repository.parallel(clazz);
+        return this;
+    }
+
+    /** @return parse caches of primitives by class, e.g. to report hits and misses */
+    public Map<Class<?>, LruCache<String, Object>> primitiveCaches() {
+        return repository.caches();
+    }
+
     public Cli base(Class<?> base, String syntax) {
         currentBase = Base.create(currentBase, base, syntax);
         return this;
@@ -110,13 +285,37 @@ public class Cli {
     }
 
     public Cli begin(String name, Object context, String definition) {
+        return begin(name, context, definition, Scope.INVOCATION);
+    }
+
+    public Cli begin(Object context, String definition, Scope scope) {
+        return begin(null, context, definition, scope);
+    }
+
+    /**
+     * Singleton contexts are instantiated here, lazy contexts when they're needed for the first time; memoized contexts
+     * when they're needed with arguments not seen before.
+     */
+    public Cli begin(String name, Object context, String definition, Scope scope) {
         Handle handle;
 
         if (context == null) {
             throw new IllegalArgumentException();
         }
-        handle = Handle.create(currentContext, context);
-        this.currentContext = Context.create(currentContext, currentBase, name, handle, definition);
+        // run(Console, args) replaces the console, so contexts shared between invocations must not depend on it
+        handle = context == console ? new Handle.InstanceHandle(console, true) : Handle.create(currentContext, context);
+        this.currentContext = Context.create(currentContext, currentBase, name, scope, handle, definition,
+                scope == Scope.MEMOIZED ? new LruCache<>(memoSize, memoTtl) : null);
+        contexts.add(currentContext);
+        if (scope == Scope.SINGLETON) {
+            try {
+                currentContext.compile(repository).singleton();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("cannot create singleton context " + currentContext.name + ": " + e.getMessage(), e);
+            }
+        }
         return this;
     }
 
@@ -137,33 +336,59 @@ public class Cli {
     }
 
     private Cli doAdd(Object clazzOrInstance, String definition, boolean dflt) {
-        Context context;
         int idx;
         String name;
+        String remaining;
         Command command;
-        ContextBuilder builder;
+        Context parent;
+        Base base;
 
         idx = definition.indexOf(' ');
         if (idx == -1) {
             name = definition;
-            definition = "";
+            remaining = "";
         } else {
             name = definition.substring(0, idx);
-            definition = definition.substring(idx + 1);
+            remaining = definition.substring(idx + 1);
         }
-        context = Context.create(currentContext, currentBase, null, Handle.create(currentContext, clazzOrInstance), definition);
-        builder = context.compile(repository);
-        if (lookup(name) != null) {
+        if (commandMap.containsKey(name)) {
             throw new IllegalArgumentException("duplicate command: " + name);
         }
-        command = new Command(builder, name, commandMethod(clazzOrInstance, context.mapping));
-        commands.add(command);
+        if (lazy) {
+            parent = currentContext;
+            base = currentBase;
+            command = new Command(name, () -> compile(parent, base, clazzOrInstance, name, remaining));
+        } else {
+            command = compile(currentContext, currentBase, clazzOrInstance, name, remaining);
+        }
+        commandMap.put(name, command);
+        commandList.add(command);
         if (dflt) {
             defaultCommand = command;
         }
         return this;
     }
 
+    private Command compile(Context parent, Base base, Object clazzOrInstance, String name, String definition) {
+        Context context;
+        ContextBuilder builder;
+
+        context = Context.create(parent, base, null, Scope.INVOCATION, Handle.create(parent, clazzOrInstance), definition, null);
+        builder = context.compile(repository);
+        return new Command(builder, name, commandMethod(clazzOrInstance, context.mapping));
+    }
+
+    /**
+     * Compiles all commands. Use this in tests to detect definition errors in lazy clis; a no-op for non-lazy clis,
+     * they are validated when adding commands.
+     */
+    public Cli validate() {
+        for (Command command : commandList) {
+            command.getBuilder();
+        }
+        return this;
+    }
+
     private static final Class<?>[] NO_ARGS = {};
 
     private static Method commandMethod(Object classOrInstance, Mapping mapping) {
@@ -186,23 +411,143 @@ public class Cli {
         }
     }
 
+    /**
+     * Closes all singleton context objects that have been created and implement AutoCloseable, inner contexts first.
+     * All of them are closed even if closing one fails; the first exception is thrown with the others suppressed.
+     * Checked exceptions other than IOException are wrapped in an IOException.
+     */
+    @Override
+    public void close() throws IOException {
+        Exception first;
+        ContextBuilder builder;
+
+        first = null;
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            builder = contexts.get(i).compiled();
+            if (builder != null) {
+                try {
+                    builder.closeSingleton();
+                } catch (Exception e) {
+                    if (first == null) {
+                        first = e;
+                    } else {
+                        first.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (first == null) {
+            return;
+        }
+        if (first instanceof IOException) {
+            throw (IOException) first;
+        }
+        if (first instanceof RuntimeException) {
+            throw (RuntimeException) first;
+        }
+        if (first instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+        }
+        throw new IOException("cannot close context: " + first.getMessage(), first);
+    }
+
+    /**
+     * Reflection configuration for GraalVM native-image: all constructors, methods and fields Inline invokes for the
+     * commands defined so far. Typically invoked from a test to generate
+     * META-INF/native-image/&lt;groupId&gt;/&lt;artifactId&gt;/reflect-config.json.
+     */
+    public String reflectConfig() {
+        ReflectConfig config;
+
+        config = new ReflectConfig();
+        for (Command command : commandList) {
+            command.collect(config);
+        }
+        return config.toJson();
+    }
+
     public int run(String... args) {
         return run(Arrays.asList(args));
     }
 
     public int run(List<String> args) {
+        if (exceptionHandler == null) {
+            throw new InvalidCliException("missing exception handler");
+        }
+        return doRun(args, System.in, null, console, null, exceptionHandler);
+    }
+
+    /**
+     * Runs a command with the specified console instead of the console this cli was created with - in contexts, in
+     * the help command and for exception handling. Used by Daemon to run commands for its clients; thread-safe.
+     */
+    public int run(Console requestConsole, List<String> args) {
+        Map<Object, Object> substitutions;
+
+        substitutions = new IdentityHashMap<>();
+        if (console != null) {
+            substitutions.put(console, requestConsole);
+        }
+        if (help != null) {
+            substitutions.put(help, new Help(requestConsole, helpText));
+        }
+        return doRun(args, requestConsole.in, requestConsole.getWorkingDirectory(), requestConsole, substitutions,
+                requestConsole::handleException);
+    }
+
+    /**
+     * Runs many invocations concurrently, at most concurrency at a time, on virtual threads if the jvm supports them.
+     * Every invocation gets a console of its own (see run(Console, args)) that buffers its output; buffered output is
+     * printed to the console of this cli in invocation order. Invocations have no input.
+     *
+     * @return first non-zero exit code in invocation order, 0 if all invocations succeeded
+     */
+    public int runAll(List<List<String>> invocations, int concurrency) throws InterruptedException {
+        return new Batch(this, console == null ? Console.create() : console, concurrency).run(invocations);
+    }
+
+    /** Runs a shell with a prompt if the jvm has an interactive console, without prompt otherwise. */
+    public int shell() {
+        return shell(System.console() == null ? "" : "> ");
+    }
+
+    /**
+     * Reads command lines from the console of this cli and runs them, with compiled commands and warmed-up code
+     * re-used between commands. Lines are split like a shell does, with single quotes, double quotes and backslash
+     * escapes. Empty lines and lines starting with # are ignored. Built-in commands: "history" to list previous lines,
+     * "!n" and "!!" to repeat them, "exit [code]" or "quit" to leave the shell; the shell also ends at end of input.
+     *
+     * @param prompt printed before reading a line; the empty string for scripted input
+     * @return exit code passed to exit, exit code of the last command otherwise
+     */
+    public int shell(String prompt) {
+        return new Shell(this, console == null ? Console.create() : console, prompt).run();
+    }
+
+    /**
+     * @param workingDirectory to resolve relative file names against; null for the working directory of the jvm
+     * @param timingConsole to print the timing to if requested; null if none
+     */
+    private int doRun(List<String> args, InputStream stdin, File workingDirectory, Console timingConsole,
+                      Map<Object, Object> substitutions, Function<Throwable, Integer> handler) {
+        Stopwatch stopwatch;
+        ArgumentFiles files;
         Object obj;
         Command c;
+        ContextBuilder builder;
         String name;
         List<String> lst;
+        int exitCode;
 
-        if (exceptionHandler == null) {
-            throw new InvalidCliException("missing exception handler");
-        }
+        stopwatch = isTimed(args) ? new Stopwatch() : null;
+        files = argumentFiles ? new ArgumentFiles(stdin, workingDirectory) : null;
+        enter(stopwatch, Phase.COMPILE);
+        c = null;
         try {
             if (commands.size() == 1) {
                 c = commands.get(0);
-                obj = c.getBuilder().run(defaults, args);
+                builder = c.getBuilder();
+                obj = builder.run(newActuals(files, workingDirectory, substitutions, stopwatch), args);
             } else {
                 lst = new ArrayList<>(args);
                 name = eatCommand(lst);
@@ -214,12 +559,62 @@ public class Cli {
                 } else {
                     c = get(name);
                 }
-                obj = c.getBuilder().run(defaults, lst);
+                builder = c.getBuilder();
+                obj = builder.run(newActuals(files, workingDirectory, substitutions, stopwatch), lst);
             }
-            return c.run(obj);
+            enter(stopwatch, Phase.RUN);
+            exitCode = c.run(obj);
+            enter(stopwatch, null);
         } catch (Throwable e) {
-            return exceptionHandler.apply(e);
+            enter(stopwatch, null);
+            exitCode = handler.apply(e);
+        } finally {
+            if (files != null) {
+                files.close();
+            }
         }
+        if (stopwatch != null) {
+            report(new Timing(c == null ? null : c.getName(), exitCode, stopwatch), timingConsole);
+        }
+        return exitCode;
+    }
+
+    /**
+     * Measuring costs more than running a trivial command, so it's done only if there's a listener or the timing
+     * option is specified. The option is looked up before parsing, false positives merely cost time.
+     */
+    private boolean isTimed(List<String> args) {
+        if (!listeners.isEmpty()) {
+            return true;
+        }
+        if (timingOption) {
+            for (String arg : args) {
+                if (arg.equals("-timing") || arg.startsWith("-timing=")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void enter(Stopwatch stopwatch, Phase phase) {
+        if (stopwatch != null) {
+            stopwatch.enter(phase);
+        }
+    }
+
+    private void report(Timing timing, Console timingConsole) {
+        for (Consumer<Timing> listener : listeners) {
+            listener.accept(timing);
+        }
+        if (timingConsole != null && timingConsole.getTiming()) {
+            timingConsole.verbose.print(timing);
+            timingConsole.verbose.flush();
+        }
+    }
+
+    private Actuals newActuals(ArgumentFiles files, File workingDirectory, Map<Object, Object> substitutions, Stopwatch stopwatch) {
+        return new Actuals(defaults, files, substitutions, stopwatch, conversionExecutor, workingDirectory);
     }
 
     private String eatCommand(List<String> args) {
@@ -246,11 +641,6 @@ public class Cli {
     }
 
     public Command lookup(String name) {
-        for (Command method : commands) {
-            if (name.equals(method.getName())) {
-                return method;
-            }
-        }
-        return null;
+        return commandMap.get(name);
     }
 }
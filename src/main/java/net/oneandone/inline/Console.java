@@ -17,12 +17,17 @@ package net.oneandone.inline;
 
 import net.oneandone.inline.util.SwitchableWriter;
 
+import java.io.File;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Scanner;
 
 /**
- * Configurable replacement for System.out, System.err and System.in. 
+ * Configurable replacement for System.out, System.err and System.in, the working directory and the environment.
+ * Commands run by a Daemon get a console per invocation with the streams, directory and environment of the client.
  */
 public class Console {
     public static Console create() {
@@ -33,17 +38,40 @@ public class Console {
     public final PrintWriter verbose;
     public final PrintWriter error;
     public final Scanner input;
+    /** the stream input reads from; for argument files */
+    final InputStream in;
+    private final File workingDirectory;
+    private final Map<String, String> env;
     private boolean stacktraces;
+    private boolean timing;
     
     private final SwitchableWriter verboseSwitch;
     
     public Console(PrintWriter info, PrintWriter error, InputStream in) {
+        this(info, error, in, new File(System.getProperty("user.dir")), System.getenv());
+    }
+
+    public Console(PrintWriter info, PrintWriter error, InputStream in, File workingDirectory, Map<String, String> env) {
         this.info = info;
         this.verboseSwitch = new SwitchableWriter(info, false);
         this.verbose = new PrintWriter(verboseSwitch, true);
         this.error = error;
         this.input = new Scanner(in);
+        this.in = in;
+        this.workingDirectory = workingDirectory;
+        this.env = Collections.unmodifiableMap(new HashMap<>(env));
         this.stacktraces = false;
+        this.timing = false;
+    }
+
+    /** Use this instead of the "user.dir" property to resolve relative file names */
+    public File getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    /** Use this instead of System.getenv() */
+    public Map<String, String> getEnv() {
+        return env;
     }
 
     public boolean getStacktraces() {
@@ -54,6 +82,18 @@ public class Console {
         stacktraces = s;
     }
 
+    public boolean getTiming() {
+        return timing;
+    }
+
+    /** Prints a Timing breakdown of the invocation to verbose output; implies verbose. */
+    public void setTiming(boolean timing) {
+        this.timing = timing;
+        if (timing) {
+            setVerbose(true);
+        }
+    }
+
     public boolean getVerbose() {
         return verboseSwitch.getEnabled();
     }
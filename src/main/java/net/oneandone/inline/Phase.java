@@ -0,0 +1,30 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline;
+
+/** Steps of an invocation, in execution order; see Timing. */
+public enum Phase {
+    /** looking up the command and compiling it in lazy mode */
+    COMPILE,
+    /** assigning command line arguments to options and values */
+    PARSE,
+    /** converting argument strings into values and passing them to constructors, fields or setters */
+    CONVERT,
+    /** creating context objects and the command object, without conversions */
+    INSTANTIATE,
+    /** the command method */
+    RUN
+}
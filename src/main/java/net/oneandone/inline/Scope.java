@@ -0,0 +1,40 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline;
+
+/**
+ * Life time of context objects, see Cli.begin. Singleton contexts are shared by all invocations of a cli; thus they
+ * cannot have arguments, and they can only depend on other singleton contexts or on context instances. The console of
+ * Cli.create and Cli.single is not such an instance, because Cli.run(Console, args) replaces it per invocation. Singleton
+ * contexts are closed by Cli.close if they implement AutoCloseable.
+ */
+public enum Scope {
+    /** new context object for every invocation; the default */
+    INVOCATION,
+
+    /** context object created by Cli.begin and shared by all invocations */
+    SINGLETON,
+
+    /** context object created by the first invocation that uses it and shared by all subsequent invocations */
+    LAZY,
+
+    /**
+     * context object shared by invocations with equal arguments, e.g. for factory methods with expensive lookups;
+     * kept in a bounded cache, see Cli.memoize. The object must depend on its arguments only, and arguments cannot be
+     * set on the object.
+     */
+    MEMOIZED
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline;
+
+import net.oneandone.inline.util.Split;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Reads command lines from the console and runs them; see Cli.shell. */
+class Shell {
+    private final Cli cli;
+    private final Console console;
+    private final String prompt;
+    private final List<String> history;
+
+    Shell(Cli cli, Console console, String prompt) {
+        this.cli = cli;
+        this.console = console;
+        this.prompt = prompt;
+        this.history = new ArrayList<>();
+    }
+
+    /** @return exit code of the last command */
+    public int run() {
+        String line;
+        List<String> args;
+        int exitCode;
+
+        exitCode = 0;
+        while (true) {
+            if (!prompt.isEmpty()) {
+                console.info.print(prompt);
+                console.info.flush();
+            }
+            if (!console.input.hasNextLine()) {
+                return exitCode;
+            }
+            line = console.input.nextLine().trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            if (line.startsWith("!")) {
+                line = recall(line.substring(1));
+                if (line == null) {
+                    exitCode = -1;
+                    continue;
+                }
+                console.info.println(line);
+            }
+            history.add(line);
+            try {
+                args = Split.line(line);
+            } catch (ArgumentException e) {
+                console.error.println(e.getMessage());
+                exitCode = -1;
+                continue;
+            }
+            switch (args.get(0)) {
+                case "exit":
+                case "quit":
+                    if (args.size() == 1) {
+                        return exitCode;
+                    }
+                    try {
+                        return Integer.parseInt(args.get(1));
+                    } catch (NumberFormatException e) {
+                        console.error.println("exit: numeric argument expected: " + args.get(1));
+                        exitCode = -1;
+                    }
+                    break;
+                case "history":
+                    for (int i = 0; i < history.size(); i++) {
+                        console.info.println((i + 1) + "  " + history.get(i));
+                    }
+                    exitCode = 0;
+                    break;
+                default:
+                    exitCode = invoke(args);
+                    break;
+            }
+        }
+    }
+
+    /** @param ref "!" for the last line or the number of a history line */
+    private String recall(String ref) {
+        int n;
+
+        if (ref.equals("!")) {
+            n = history.size();
+        } else {
+            try {
+                n = Integer.parseInt(ref);
+            } catch (NumberFormatException e) {
+                n = 0;
+            }
+        }
+        if (n < 1 || n > history.size()) {
+            console.error.println("!" + ref + ": event not found");
+            return null;
+        }
+        return history.get(n - 1);
+    }
+
+    private int invoke(List<String> args) {
+        try {
+            return cli.run(args);
+        } catch (RuntimeException | Error e) {
+            // keep the shell running
+            e.printStackTrace(console.error);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline;
+
+import net.oneandone.inline.internal.Stopwatch;
+
+/**
+ * Nanoseconds and allocated bytes per phase of an invocation. Passed to the listeners of a cli, and printed to the
+ * verbose output of the console if the timing option is specified.
+ */
+public class Timing {
+    private final String command;
+    private final int exitCode;
+    private final long[] nanos;
+    /** null if the jvm cannot measure allocations */
+    private final long[] bytes;
+
+    Timing(String command, int exitCode, Stopwatch stopwatch) {
+        this.command = command;
+        this.exitCode = exitCode;
+        this.nanos = stopwatch.nanos();
+        this.bytes = stopwatch.bytes();
+    }
+
+    /** @return null if the invocation failed before a command was found */
+    public String getCommand() {
+        return command;
+    }
+
+    public int getExitCode() {
+        return exitCode;
+    }
+
+    public long getNanos(Phase phase) {
+        return nanos[phase.ordinal()];
+    }
+
+    /** @return bytes allocated by the invoking thread, -1 if the jvm cannot measure allocations */
+    public long getBytes(Phase phase) {
+        return bytes == null ? -1 : bytes[phase.ordinal()];
+    }
+
+    public long getTotalNanos() {
+        long result;
+
+        result = 0;
+        for (long n : nanos) {
+            result += n;
+        }
+        return result;
+    }
+
+    /** Breakdown with one line per phase */
+    @Override
+    public String toString() {
+        StringBuilder result;
+
+        result = new StringBuilder();
+        result.append("timing ").append(command == null ? "(no command)" : command).append(":\n");
+        for (Phase phase : Phase.values()) {
+            line(result, phase.name().toLowerCase(), getNanos(phase), getBytes(phase));
+        }
+        line(result, "total", getTotalNanos(), -1);
+        return result.toString();
+    }
+
+    private static void line(StringBuilder result, String name, long nanos, long bytes) {
+        result.append(String.format("  %-12s %10.3f ms", name, nanos / 1000000.0));
+        if (bytes >= 0) {
+            result.append(String.format(" %12d bytes", bytes));
+        }
+        result.append('\n');
+    }
+}
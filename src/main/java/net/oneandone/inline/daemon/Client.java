@@ -0,0 +1,135 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thin launcher that runs a command in a Daemon: passes arguments, working directory, environment and stdin, prints
+ * stdout and stderr of the command and exits with its exit code. Depends on the jdk only, so it can be started with
+ * a minimal classpath:
+ *
+ *    java -cp inline.jar net.oneandone.inline.daemon.Client addressFile args...
+ *
+ * Still pays for jvm startup; the client.sh script next to this class speaks the same protocol without a jvm.
+ */
+public class Client {
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("usage: Client addressFile args...");
+            System.exit(2);
+        }
+        System.exit(run(Paths.get(args[0]), Arrays.asList(args).subList(1, args.length),
+                new File(System.getProperty("user.dir")), System.getenv(), System.in, System.out, System.err));
+    }
+
+    /** @return exit code of the command */
+    public static int run(Path addressFile, List<String> args, File workingDirectory, Map<String, String> env,
+                          InputStream stdin, OutputStream stdout, OutputStream stderr) throws IOException {
+        String[] address;
+        DataInputStream src;
+        DataOutputStream dest;
+        Thread pump;
+        byte channel;
+        byte[] buffer;
+        int len;
+
+        address = new String(Files.readAllBytes(addressFile), StandardCharsets.UTF_8).trim().split(" ");
+        if (address.length != 2) {
+            throw new IOException(addressFile + ": invalid address file");
+        }
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), Integer.parseInt(address[0]))) {
+            src = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            dest = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            dest.writeInt(Protocol.VERSION);
+            Protocol.writeString(dest, address[1]);
+            Protocol.writeString(dest, workingDirectory.getAbsolutePath());
+            dest.writeInt(env.size());
+            for (Map.Entry<String, String> entry : env.entrySet()) {
+                Protocol.writeString(dest, entry.getKey());
+                Protocol.writeString(dest, entry.getValue());
+            }
+            dest.writeInt(args.size());
+            for (String arg : args) {
+                Protocol.writeString(dest, arg);
+            }
+            dest.flush();
+            pump = new Thread(() -> pump(stdin, dest), "inline-client-stdin");
+            pump.setDaemon(true);
+            pump.start();
+            buffer = new byte[8192];
+            while (true) {
+                channel = src.readByte();
+                if (channel == Protocol.EXIT) {
+                    return src.readInt();
+                }
+                len = src.readInt();
+                if (buffer.length < len) {
+                    buffer = new byte[len];
+                }
+                src.readFully(buffer, 0, len);
+                switch (channel) {
+                    case Protocol.STDOUT:
+                        stdout.write(buffer, 0, len);
+                        stdout.flush();
+                        break;
+                    case Protocol.STDERR:
+                        stderr.write(buffer, 0, len);
+                        stderr.flush();
+                        break;
+                    default:
+                        throw new IOException("unknown channel: " + channel);
+                }
+            }
+        }
+    }
+
+    /** Forwards stdin until it's exhausted or the command has terminated */
+    private static void pump(InputStream stdin, DataOutputStream dest) {
+        byte[] buffer;
+        int len;
+
+        buffer = new byte[8192];
+        try {
+            while (true) {
+                len = stdin.read(buffer);
+                if (len == -1) {
+                    Protocol.writeFrame(dest, (byte) 0, buffer, 0, 0);
+                    return;
+                }
+                Protocol.writeFrame(dest, (byte) 0, buffer, 0, len);
+            }
+        } catch (IOException e) {
+            // command has terminated
+        }
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.daemon;
+
+import net.oneandone.inline.Cli;
+import net.oneandone.inline.Console;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a cli resident and runs commands for Clients, each with its own Console for the streams, working directory
+ * and environment of the client. Saves jvm startup and cli compilation for every command but the first.
+ *
+ * Listens on a loopback port; port and a random token are written to an address file readable by the owner only.
+ * Clients have to pass the token, so other users on the same machine cannot run commands.
+ */
+public class Daemon implements AutoCloseable {
+    /** milliseconds a client may take to send version and token; idle connections would otherwise block a thread */
+    private static final int AUTHENTICATION_TIMEOUT = 10000;
+
+    private final Cli cli;
+    private final Path addressFile;
+    private final String token;
+    private final ServerSocket server;
+    private final ExecutorService executor;
+    private final Thread acceptor;
+
+    /** Starts listening and writes the address file. */
+    public Daemon(Cli cli, Path addressFile) throws IOException {
+        this.cli = cli;
+        this.addressFile = addressFile;
+        this.token = newToken();
+        this.server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread;
+
+            thread = new Thread(r, "inline-daemon-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writeAddress();
+        this.acceptor = new Thread(this::accept, "inline-daemon");
+        this.acceptor.start();
+    }
+
+    private static String newToken() {
+        byte[] bytes;
+        StringBuilder result;
+
+        bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        result = new StringBuilder();
+        for (byte b : bytes) {
+            result.append(String.format("%02x", b & 0xff));
+        }
+        return result.toString();
+    }
+
+    private void writeAddress() throws IOException {
+        Path tmp;
+        PosixFileAttributeView view;
+
+        tmp = addressFile.resolveSibling(addressFile.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        Files.createFile(tmp);
+        view = Files.getFileAttributeView(tmp, PosixFileAttributeView.class);
+        if (view != null) {
+            view.setPermissions(EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE));
+        }
+        Files.write(tmp, (server.getLocalPort() + " " + token + "\n").getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, addressFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /** Blocks until the daemon is closed. */
+    public void join() throws InterruptedException {
+        acceptor.join();
+    }
+
+    /** Stops accepting clients and removes the address file; running commands are not interrupted. */
+    @Override
+    public void close() throws IOException {
+        server.close();
+        executor.shutdown();
+        Files.deleteIfExists(addressFile);
+    }
+
+    //--
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                serveLater(server.accept());
+            } catch (IOException e) {
+                // closed
+                return;
+            }
+        }
+    }
+
+    private void serveLater(Socket socket) {
+        executor.execute(() -> serve(socket));
+    }
+
+    private void serve(Socket socket) {
+        DataInputStream src;
+        DataOutputStream dest;
+
+        try (Socket s = socket) {
+            s.setSoTimeout(AUTHENTICATION_TIMEOUT);
+            src = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            dest = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            serve(s, src, dest);
+        } catch (IOException e) {
+            // client disconnected; there's nobody to report to
+        }
+    }
+
+    private void serve(Socket socket, DataInputStream src, DataOutputStream dest) throws IOException {
+        File workingDirectory;
+        Map<String, String> env;
+        List<String> args;
+        Console console;
+        int exitCode;
+
+        if (src.readInt() != Protocol.VERSION) {
+            throw new IOException("protocol version mismatch");
+        }
+        if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                Protocol.readString(src, Protocol.TOKEN_MAX).getBytes(StandardCharsets.UTF_8))) {
+            throw new IOException("invalid token");
+        }
+        // authenticated: commands may wait for stdin as long as they like
+        socket.setSoTimeout(0);
+        workingDirectory = new File(Protocol.readString(src, Protocol.STRING_MAX));
+        env = new HashMap<>();
+        for (int i = src.readInt(); i > 0; i--) {
+            env.put(Protocol.readString(src, Protocol.STRING_MAX), Protocol.readString(src, Protocol.STRING_MAX));
+        }
+        args = new ArrayList<>();
+        for (int i = src.readInt(); i > 0; i--) {
+            args.add(Protocol.readString(src, Protocol.STRING_MAX));
+        }
+        console = new Console(writer(dest, Protocol.STDOUT), writer(dest, Protocol.STDERR),
+                new Protocol.FrameInputStream(src), workingDirectory, env);
+        try {
+            exitCode = cli.run(console, args);
+        } catch (RuntimeException | Error e) {
+            // what the jvm does for uncaught exceptions
+            e.printStackTrace(console.error);
+            exitCode = 1;
+        }
+        console.info.flush();
+        console.error.flush();
+        synchronized (dest) {
+            dest.writeByte(Protocol.EXIT);
+            dest.writeInt(exitCode);
+            dest.flush();
+        }
+    }
+
+    private static PrintWriter writer(DataOutputStream dest, byte channel) {
+        return new PrintWriter(new OutputStreamWriter(new Protocol.FrameOutputStream(dest, channel), StandardCharsets.UTF_8), true);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.daemon;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format between Client (or client.sh) and Daemon. Ints are 4 bytes big endian, strings are length and UTF-8
+ * bytes. The client sends version, token, working directory, environment and arguments, followed by stdin frames
+ * (length, bytes; length 0 for end of input). The daemon answers with stdout and stderr frames (channel, length, bytes)
+ * and finally the exit code (channel EXIT, code).
+ *
+ * Lengths are checked before allocating: the token is read from clients not authenticated yet.
+ */
+final class Protocol {
+    public static final int VERSION = 1;
+
+    public static final byte STDOUT = 1;
+    public static final byte STDERR = 2;
+    public static final byte EXIT = 3;
+
+    /** max length of the token in bytes; the token is 32 hex digits */
+    public static final int TOKEN_MAX = 64;
+    /** max length of the working directory, an environment variable or an argument in bytes */
+    public static final int STRING_MAX = 1024 * 1024;
+
+    private Protocol() {
+    }
+
+    /** @param max max length in bytes */
+    public static String readString(DataInputStream src, int max) throws IOException {
+        int length;
+        byte[] bytes;
+
+        length = src.readInt();
+        if (length < 0 || length > max) {
+            throw new IOException("invalid string length: " + length);
+        }
+        bytes = new byte[length];
+        src.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeString(DataOutputStream dest, String str) throws IOException {
+        byte[] bytes;
+
+        bytes = str.getBytes(StandardCharsets.UTF_8);
+        dest.writeInt(bytes.length);
+        dest.write(bytes);
+    }
+
+    /** @param channel 0 for stdin frames, they have no channel. Frames written to the same stream are synchronized on it. */
+    public static void writeFrame(DataOutputStream dest, byte channel, byte[] bytes, int ofs, int len) throws IOException {
+        synchronized (dest) {
+            if (channel != 0) {
+                dest.writeByte(channel);
+            }
+            dest.writeInt(len);
+            dest.write(bytes, ofs, len);
+            dest.flush();
+        }
+    }
+
+    //--
+
+    /** Reads stdin frames sent by the client. */
+    public static class FrameInputStream extends InputStream {
+        private final DataInputStream src;
+        /** bytes left in the current frame; -1 at end of input */
+        private int remaining;
+
+        public FrameInputStream(DataInputStream src) {
+            this.src = src;
+            this.remaining = 0;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one;
+
+            one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int ofs, int len) throws IOException {
+            int count;
+
+            if (len == 0) {
+                return 0;
+            }
+            if (remaining == 0) {
+                remaining = src.readInt();
+                if (remaining < 0) {
+                    throw new IOException("invalid frame length: " + remaining);
+                }
+                if (remaining == 0) {
+                    remaining = -1;
+                }
+            }
+            if (remaining == -1) {
+                return -1;
+            }
+            count = src.read(bytes, ofs, Math.min(len, remaining));
+            if (count == -1) {
+                throw new IOException("client disconnected");
+            }
+            remaining -= count;
+            return count;
+        }
+    }
+
+    /** Writes stdout or stderr frames to the client. */
+    public static class FrameOutputStream extends OutputStream {
+        private final DataOutputStream dest;
+        private final byte channel;
+
+        public FrameOutputStream(DataOutputStream dest, byte channel) {
+            this.dest = dest;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int ofs, int len) throws IOException {
+            if (len > 0) {
+                writeFrame(dest, channel, bytes, ofs, len);
+            }
+        }
+    }
+}
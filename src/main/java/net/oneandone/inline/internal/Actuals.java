@@ -16,59 +16,203 @@
 package net.oneandone.inline.internal;
 
 import net.oneandone.inline.ArgumentException;
+import net.oneandone.inline.Phase;
 
+import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
-/** Maps formals to actuals */
+/**
+ * Maps formals to actuals. Created per invocation, only arguments actually specified on the command line get a value list.
+ * Value lists are indexed by the slot of the argument.
+ */
 public class Actuals {
-    private final Map<Argument, List<String>> actuals;
+    /** null until filled */
+    private List<String>[] actuals;
     private final Map<String, String> defaults;
+    /** null to disable argument files */
+    private final ArgumentFiles files;
+    /** instances to replace when instantiating contexts, compared by identity; null for none */
+    private final Map<Object, Object> substitutions;
+    /** null to not measure phases */
+    private final Stopwatch stopwatch;
+    /** to convert the arguments of a context concurrently; null to convert them sequentially */
+    private final Executor executor;
+    /** to resolve relative file names against; null for the working directory of the jvm */
+    private final File workingDirectory;
 
     public Actuals(Map<String, String> defaults) {
+        this(defaults, null);
+    }
+
+    public Actuals(Map<String, String> defaults, ArgumentFiles files) {
+        this(defaults, files, null);
+    }
+
+    public Actuals(Map<String, String> defaults, ArgumentFiles files, Map<Object, Object> substitutions) {
+        this(defaults, files, substitutions, null);
+    }
+
+    public Actuals(Map<String, String> defaults, ArgumentFiles files, Map<Object, Object> substitutions, Stopwatch stopwatch) {
+        this(defaults, files, substitutions, stopwatch, null);
+    }
+
+    public Actuals(Map<String, String> defaults, ArgumentFiles files, Map<Object, Object> substitutions, Stopwatch stopwatch,
+                   Executor executor) {
+        this(defaults, files, substitutions, stopwatch, executor, null);
+    }
+
+    public Actuals(Map<String, String> defaults, ArgumentFiles files, Map<Object, Object> substitutions, Stopwatch stopwatch,
+                   Executor executor, File workingDirectory) {
         this.defaults = defaults;
-        this.actuals = new HashMap<>();
+        this.files = files;
+        this.substitutions = substitutions;
+        this.stopwatch = stopwatch;
+        this.executor = executor;
+        this.workingDirectory = workingDirectory;
+        this.actuals = null;
     }
 
-    public void defineAll(Collection<Argument> formals) {
-        for (Argument formal : formals) {
-            define(formal);
+    /** @return the replacement for the specified context object of this invocation, obj itself if there's none */
+    public Object substitute(Object obj) {
+        Object result;
+
+        if (substitutions == null) {
+            return obj;
         }
+        result = substitutions.get(obj);
+        return result == null ? obj : result;
     }
 
-    public void define(Argument formal) {
-        if (actuals.put(formal, new ArrayList<>()) != null) {
-            throw new InvalidCliException("duplicate argument: " + formal);
-        }
+    /** @return phase measured so far; null if none or if this invocation is not measured */
+    public Phase enter(Phase phase) {
+        return stopwatch == null ? null : stopwatch.enter(phase);
     }
 
     /** @return true if this formal argument has reached the max number of items. */
     public boolean add(Argument formal, String item) {
         List<String> value;
 
-        value = actuals.get(formal);
+        value = actuals[formal.slot()];
+        if (value == null) {
+            value = new ArrayList<>(formal.source.isList() ? 10 : 1);
+            actuals[formal.slot()] = value;
+        }
         value.add(item);
         return value.size() == formal.source.max();
     }
 
-    public void save(Context context, Object target) {
+    /**
+     * @param dest parameter array for arguments passed to the factory, the context object otherwise
+     */
+    public void save(Argument[] formals, Object dest) {
+        List<String> value;
+        Phase outer;
+
+        if (formals.length == 0) {
+            return;
+        }
+        outer = enter(Phase.CONVERT);
+        try {
+            if (executor != null && formals.length > 1) {
+                saveConcurrently(formals, dest);
+            } else {
+                for (Argument argument : formals) {
+                    value = get(argument);
+                    argument.source.checkCardinality(value.size());
+                    argument.set(dest, value, defaults, files, workingDirectory);
+                }
+            }
+        } finally {
+            enter(outer);
+        }
+    }
+
+    /**
+     * Converts arguments concurrently, then stores them in declaration order. Errors are reported in declaration order
+     * too, so the first invalid argument is reported no matter which conversion fails first. Arguments referencing
+     * argument files and values stored without boxing are converted sequentially when storing them.
+     */
+    private void saveConcurrently(Argument[] formals, Object dest) {
+        List<List<String>> values;
+        List<CompletableFuture<?>> futures;
+        ArgumentException[] invalid;
         Argument argument;
+        List<String> value;
+        CompletableFuture<?> future;
 
-        for (Map.Entry<Argument, List<String>> entry : actuals.entrySet()) {
-            argument = entry.getKey();
-            if (argument.context == context) {
-                if (argument.target.before() == (target == null)) {
-                    argument.source.checkCardinality(entry.getValue().size());
-                    argument.set(target, entry.getValue(), defaults);
+        values = new ArrayList<>(formals.length);
+        futures = new ArrayList<>(formals.length);
+        invalid = new ArgumentException[formals.length];
+        for (int i = 0; i < formals.length; i++) {
+            argument = formals[i];
+            value = get(argument);
+            values.add(value);
+            future = null;
+            try {
+                argument.source.checkCardinality(value.size());
+                if (argument.isConvertible(value, files)) {
+                    future = convertLater(argument, value);
                 }
+            } catch (ArgumentException e) {
+                // reported when storing, after the errors of preceding arguments
+                invalid[i] = e;
+            }
+            futures.add(future);
+        }
+        for (int i = 0; i < formals.length; i++) {
+            argument = formals[i];
+            future = futures.get(i);
+            if (invalid[i] != null) {
+                throw invalid[i];
+            } else if (future == null) {
+                argument.set(dest, values.get(i), defaults, files, workingDirectory);
+            } else {
+                argument.target.doSet(dest, join(future));
+            }
+        }
+    }
+
+    private CompletableFuture<?> convertLater(Argument argument, List<String> value) {
+        return CompletableFuture.supplyAsync(() -> argument.convert(value, defaults, workingDirectory), executor);
+    }
+
+    private static Object join(CompletableFuture<?> future) {
+        Throwable cause;
+
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
             }
+            throw e;
         }
     }
 
-    public void fill(List<String> args, Map<String, Argument> options, List<Argument> values) {
+    private List<String> get(Argument argument) {
+        List<String> result;
+
+        result = actuals[argument.slot()];
+        return result == null ? Collections.<String>emptyList() : result;
+    }
+
+    @SuppressWarnings("unchecked") // generic arrays cannot be created; all elements are List<String>
+    private static List<String>[] newSlots(int slots) {
+        return (List<String>[]) new List<?>[slots];
+    }
+
+    /** @param slots number of slots of the formals in options and values */
+    public void fill(List<String> args, Map<String, Argument> options, List<Argument> values, int slots) {
         boolean inOptions;
         int position;
         int assign;
@@ -77,6 +221,7 @@ public class Actuals {
         String value;
         StringBuilder builder;
 
+        actuals = newSlots(slots);
         position = 0;
         inOptions = true;
         for (int i = 0, max = args.size(); i < max; i++) {
@@ -17,83 +17,377 @@ package net.oneandone.inline.internal;
 
 import net.oneandone.inline.ArgumentException;
 
+import java.io.File;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
 
 /** A formal argument, i.e. without value (= actual). Associates a source with a target. */
 public class Argument {
     public final Context context;
     public final Source source;
     public final Target target; // type of the argument/field where to store
+    /** index of the actual value in Actuals; assigned by the ContextBuilder, -1 before */
+    private int slot;
 
     public Argument(Context context, Source source, Target target) {
         this.context = context;
         this.source = source;
         this.target = target;
+        this.slot = -1;
     }
 
-    public void set(Object dest, List<String> actual, Map<String, String> defaults) {
+    public int slot() {
+        return slot;
+    }
+
+    /** Invoked once, when compiling: arguments belong to exactly one ContextBuilder. */
+    void assignSlot(int slot) {
+        if (this.slot != -1) {
+            throw new IllegalStateException("slot already assigned: " + source.getName());
+        }
+        this.slot = slot;
+    }
+
+    /**
+     * @param files null to disable argument files
+     * @param workingDirectory to resolve relative file names against; null for the working directory of the jvm
+     */
+    public void set(Object dest, List<String> actual, Map<String, String> defaults, ArgumentFiles files, File workingDirectory) {
+        if (target.isList() && files != null && files.containsReference(actual)) {
+            if (setStreamed(dest, actual, files, workingDirectory)) {
+                return;
+            }
+            actual = expand(actual, files);
+        }
+        if (!target.isList() && !actual.isEmpty() && setUnboxed(dest, actual.get(0))) {
+            return;
+        }
+        target.doSet(dest, convert(actual, defaults, workingDirectory));
+    }
+
+    /**
+     * @return true if convert yields the value set for these actuals, i.e. they neither reference argument files nor
+     *   are they stored without boxing
+     */
+    public boolean isConvertible(List<String> actual, ArgumentFiles files) {
+        if (target.isList()) {
+            return files == null || !files.containsReference(actual);
+        } else {
+            return actual.isEmpty() || !isUnboxed(target.component());
+        }
+    }
+
+    /** Converts without storing the result; thread-safe. @return value to pass to target.doSet */
+    public Object convert(List<String> actual, Map<String, String> defaults, File workingDirectory) {
         String d;
-        List<Object> lst;
-        Object value;
         String name;
         String dv;
         int idx;
 
-        if (target.isList()) {
-            lst = new ArrayList<>();
-            for (String str : actual) {
-                 lst.add(parse(str));
-            }
-            value = lst;
-        } else {
-            if (actual.isEmpty()) {
-                d = source.getDefaultString();
-                if (d.startsWith("@")) {
-                    if (d.length() == 1) {
-                        name = source.getName();
+        if (target.arrayComponent() != null) {
+            return parseArray(actual, workingDirectory);
+        } else if (target.isList()) {
+            return parseList(actual, workingDirectory);
+        } else if (actual.isEmpty()) {
+            d = source.getDefaultString();
+            if (d.startsWith("@")) {
+                if (d.length() == 1) {
+                    name = source.getName();
+                    dv = Source.DEFAULT_UNDEFINED;
+                } else {
+                    name = d.substring(1);
+                    idx = name.indexOf(':');
+                    if (idx == -1) {
                         dv = Source.DEFAULT_UNDEFINED;
                     } else {
-                        name = d.substring(1);
-                        idx = name.indexOf(':');
-                        if (idx == -1) {
-                            dv = Source.DEFAULT_UNDEFINED;
-                        } else {
-                            dv = name.substring(idx + 1);
-                            name = name.substring(0, idx);
-                        }
-                    }
-                    d = defaults.get(name);
-                    if (d == null) {
-                        d = dv;
+                        dv = name.substring(idx + 1);
+                        name = name.substring(0, idx);
                     }
                 }
-                value = dflt(d);
-            } else {
-                value = parse(actual.get(0));
+                d = defaults.get(name);
+                if (d == null) {
+                    d = dv;
+                }
+            }
+            return dflt(d, workingDirectory);
+        } else {
+            return parse(actual.get(0), workingDirectory);
+        }
+    }
+
+    /** Passes values to the target while reading them. @return false if the target needs all values at once */
+    private boolean setStreamed(Object dest, List<String> actual, ArgumentFiles files, File workingDirectory) {
+        Iterator<String> iter;
+
+        if (target instanceof TargetMethodIterated) {
+            iter = files.iterator(actual);
+            while (iter.hasNext()) {
+                ((TargetMethodIterated) target).doSetItem(dest, parse(iter.next(), workingDirectory));
             }
+            return true;
         }
-        target.doSet(dest, value);
+        if (target.isIterable()) {
+            target.doSet(dest, new Streamed(actual, files, workingDirectory));
+            return true;
+        }
+        return false;
     }
 
-    private Object dflt(String str) {
+    /**
+     * Values of an Iterable argument, converted while they are read. Single-use because stdin can be read only once;
+     * files not read to the end are closed when the invocation ends.
+     */
+    private class Streamed implements Iterable<Object> {
+        private final List<String> actual;
+        private final ArgumentFiles files;
+        private final File workingDirectory;
+        private final AtomicBoolean used;
+
+        Streamed(List<String> actual, ArgumentFiles files, File workingDirectory) {
+            this.actual = actual;
+            this.files = files;
+            this.workingDirectory = workingDirectory;
+            this.used = new AtomicBoolean();
+        }
+
+        /** @throws IllegalStateException if invoked more than once */
+        @Override
+        public Iterator<Object> iterator() {
+            Iterator<String> strings;
+
+            if (used.getAndSet(true)) {
+                throw new IllegalStateException("values of argument " + source.getName() + " can be iterated only once");
+            }
+            strings = files.iterator(actual);
+            return new Iterator<Object>() {
+                @Override
+                public boolean hasNext() {
+                    return strings.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return parse(strings.next(), workingDirectory);
+                }
+            };
+        }
+    }
+
+    private static List<String> expand(List<String> actual, ArgumentFiles files) {
+        List<String> result;
+        Iterator<String> iter;
+
+        result = new ArrayList<>();
+        iter = files.iterator(actual);
+        while (iter.hasNext()) {
+            result.add(iter.next());
+        }
+        return result;
+    }
+
+    private static boolean isUnboxed(Primitive component) {
+        return component instanceof PrimitiveInt || component instanceof PrimitiveLong || component instanceof PrimitiveDouble;
+    }
+
+    /** @return false if the target component is not a specialized primitive */
+    private boolean setUnboxed(Object dest, String str) {
+        Primitive component;
+        int i;
+        long l;
+        double d;
+
+        component = target.component();
+        if (component instanceof PrimitiveInt) {
+            try {
+                i = ((PrimitiveInt) component).parseInt(str);
+            } catch (RuntimeException e) {
+                throw invalid(str, e);
+            }
+            target.doSetInt(dest, i);
+        } else if (component instanceof PrimitiveLong) {
+            try {
+                l = ((PrimitiveLong) component).parseLong(str);
+            } catch (RuntimeException e) {
+                throw invalid(str, e);
+            }
+            target.doSetLong(dest, l);
+        } else if (component instanceof PrimitiveDouble) {
+            try {
+                d = ((PrimitiveDouble) component).parseDouble(str);
+            } catch (RuntimeException e) {
+                throw invalid(str, e);
+            }
+            target.doSetDouble(dest, d);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /** Primitive component types are filled without boxing */
+    private Object parseArray(List<String> actual, File workingDirectory) {
+        Primitive component;
+        int size;
+        String str;
+        int[] ints;
+        long[] longs;
+        double[] doubles;
+        Object result;
+        List<?> values;
+
+        component = target.component();
+        size = actual.size();
+        if (component instanceof PrimitiveInt) {
+            ints = new int[size];
+            for (int i = 0; i < size; i++) {
+                str = actual.get(i);
+                try {
+                    ints[i] = ((PrimitiveInt) component).parseInt(str);
+                } catch (RuntimeException e) {
+                    throw invalid(str, e);
+                }
+            }
+            return ints;
+        }
+        if (component instanceof PrimitiveLong) {
+            longs = new long[size];
+            for (int i = 0; i < size; i++) {
+                str = actual.get(i);
+                try {
+                    longs[i] = ((PrimitiveLong) component).parseLong(str);
+                } catch (RuntimeException e) {
+                    throw invalid(str, e);
+                }
+            }
+            return longs;
+        }
+        if (component instanceof PrimitiveDouble) {
+            doubles = new double[size];
+            for (int i = 0; i < size; i++) {
+                str = actual.get(i);
+                try {
+                    doubles[i] = ((PrimitiveDouble) component).parseDouble(str);
+                } catch (RuntimeException e) {
+                    throw invalid(str, e);
+                }
+            }
+            return doubles;
+        }
+        result = Array.newInstance(target.arrayComponent(), size);
+        if (component.isBulk() || component.isParallel()) {
+            values = parseList(actual, workingDirectory);
+            for (int i = 0; i < size; i++) {
+                Array.set(result, i, values.get(i));
+            }
+        } else {
+            for (int i = 0; i < size; i++) {
+                Array.set(result, i, parse(actual.get(i), workingDirectory));
+            }
+        }
+        return result;
+    }
+
+    /** @return list with one converted value per string, via the bulk parser of the component if it has one */
+    private List<?> parseList(List<String> actual, File workingDirectory) {
+        Primitive component;
+        List<?> bulk;
+        List<Object> result;
+
+        component = target.component();
+        if (component.isBulk()) {
+            try {
+                bulk = component.parseBulk(actual);
+            } catch (ArgumentException e) {
+                throw e;
+            } catch (RuntimeException e) {
+                throw new ArgumentException("invalid argument " + source.getName() + ": expected " + target.expected() + ": " + e.getMessage(), e);
+            }
+            // outside the try: a size mismatch is a bug in the bulk parser, not an invalid argument
+            component.checkBulk(actual, bulk);
+            if (workingDirectory == null) {
+                return bulk;
+            }
+            result = new ArrayList<>(bulk.size());
+            for (Object value : bulk) {
+                result.add(resolve(value, workingDirectory));
+            }
+            return result;
+        }
+        if (component.isParallel() && actual.size() > 1) {
+            return parseParallel(actual, workingDirectory);
+        }
+        result = new ArrayList<>(actual.size());
+        for (String str : actual) {
+            result.add(parse(str, workingDirectory));
+        }
+        return result;
+    }
+
+    /** Reports the failure of the first value if several values fail, regardless of the order they were parsed in. */
+    private List<?> parseParallel(List<String> actual, File workingDirectory) {
+        Object[] values;
+        ArgumentException[] errors;
+
+        values = new Object[actual.size()];
+        errors = new ArgumentException[values.length];
+        IntStream.range(0, values.length).parallel().forEach(i -> {
+            try {
+                values[i] = parse(actual.get(i), workingDirectory);
+            } catch (ArgumentException e) {
+                errors[i] = e;
+            }
+        });
+        for (ArgumentException e : errors) {
+            if (e != null) {
+                throw e;
+            }
+        }
+        return new ArrayList<>(Arrays.asList(values));
+    }
+
+    private Object dflt(String str, File workingDirectory) {
         if (Source.DEFAULT_UNDEFINED.equals(str)) {
             return target.defaultComponent();
         } else if ("null".equals(str)) {
             return null;
         } else try {
-            return  parse(str);
+            return  parse(str, workingDirectory);
         } catch (ArgumentException e) {
             throw new IllegalStateException("cannot convert default value to type " + target + ": " + str);
         }
     }
 
-    private Object parse(String str) {
+    private Object parse(String str, File workingDirectory) {
+        Object result;
+
         try {
-            return target.stringToComponent(str);
+            result = target.stringToComponent(str);
         } catch (RuntimeException e) {
-            throw new ArgumentException("invalid argument " + source.getName() + ": expected " + target.expected() + ", got '" + str + '"', e);
+            throw invalid(str, e);
         }
+        return workingDirectory == null ? result : resolve(result, workingDirectory);
+    }
+
+    /** @return value with a relative file name resolved against the working directory, value itself otherwise */
+    private static Object resolve(Object value, File workingDirectory) {
+        File file;
+
+        if (value instanceof File) {
+            file = (File) value;
+            if (!file.isAbsolute()) {
+                return new File(workingDirectory, file.getPath());
+            }
+        }
+        return value;
+    }
+
+    private ArgumentException invalid(String str, RuntimeException e) {
+        return new ArgumentException("invalid argument " + source.getName() + ": expected " + target.expected() + ", got '" + str + '"', e);
     }
 }
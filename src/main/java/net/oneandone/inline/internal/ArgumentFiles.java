@@ -0,0 +1,192 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import net.oneandone.inline.ArgumentException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Expands references in the values of list arguments: "@file" stands for the lines of the file, "-" for the lines of
+ * standard input; "@@foo" is the literal value "@foo". Lines are read lazily, one value per line, empty lines are
+ * skipped, so values can be passed to the target without materializing them. Created per invocation; files are
+ * closed when exhausted, files still open when the invocation ends are closed by {@link #close()}.
+ */
+public class ArgumentFiles {
+    private final InputStream stdin;
+    /** to resolve relative file names against; null for the working directory of the jvm */
+    private final File workingDirectory;
+    /** expanders created for this invocation; guarded by itself */
+    private final List<Expander> expanders;
+
+    public ArgumentFiles(InputStream stdin) {
+        this(stdin, null);
+    }
+
+    public ArgumentFiles(InputStream stdin, File workingDirectory) {
+        this.stdin = stdin;
+        this.workingDirectory = workingDirectory;
+        this.expanders = new ArrayList<>();
+    }
+
+    public boolean containsReference(List<String> values) {
+        for (String value : values) {
+            if (isReference(value) || value.startsWith("@@")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isReference(String value) {
+        return "-".equals(value) || (value.length() > 1 && value.startsWith("@") && value.charAt(1) != '@');
+    }
+
+    /** @return iterator over all values with references expanded; references are opened when reached */
+    public Iterator<String> iterator(List<String> values) {
+        Expander result;
+
+        result = new Expander(values.iterator());
+        synchronized (expanders) {
+            expanders.add(result);
+        }
+        return result;
+    }
+
+    /** Closes files not read to the end, e.g. because the command abandoned the iteration. Stdin is not closed. */
+    public void close() {
+        synchronized (expanders) {
+            for (Expander expander : expanders) {
+                expander.close();
+            }
+            expanders.clear();
+        }
+    }
+
+    private class Expander implements Iterator<String> {
+        private final Iterator<String> values;
+        /** null if not reading a reference */
+        private BufferedReader reader;
+        private String reference;
+        /** null if not computed yet */
+        private String next;
+
+        Expander(Iterator<String> values) {
+            this.values = values;
+            this.reader = null;
+            this.reference = null;
+            this.next = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            String value;
+
+            while (next == null) {
+                if (reader != null) {
+                    next = readLine();
+                } else if (values.hasNext()) {
+                    value = values.next();
+                    if (isReference(value)) {
+                        open(value);
+                    } else if (value.startsWith("@@")) {
+                        next = value.substring(1);
+                    } else {
+                        next = value;
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String next() {
+            String result;
+
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            result = next;
+            next = null;
+            return result;
+        }
+
+        private void open(String value) {
+            InputStream src;
+            File file;
+
+            reference = value;
+            try {
+                if ("-".equals(value)) {
+                    src = stdin;
+                } else {
+                    file = new File(value.substring(1));
+                    if (workingDirectory != null && !file.isAbsolute()) {
+                        file = new File(workingDirectory, file.getPath());
+                    }
+                    src = new FileInputStream(file);
+                }
+            } catch (IOException e) {
+                throw new ArgumentException("cannot read " + value.substring(1) + ": " + e.getMessage(), e);
+            }
+            reader = new BufferedReader(new InputStreamReader(src, StandardCharsets.UTF_8));
+        }
+
+        /** @return null if the line is empty or the reference is exhausted */
+        private String readLine() {
+            String line;
+            String failed;
+
+            try {
+                line = reader.readLine();
+                if (line == null) {
+                    close();
+                    return null;
+                }
+            } catch (IOException e) {
+                failed = reference;
+                close();
+                throw new ArgumentException("cannot read " + failed + ": " + e.getMessage(), e);
+            }
+            return line.isEmpty() ? null : line;
+        }
+
+        /** Closes the current file, ignoring failures: it's only read from. */
+        void close() {
+            if (reader != null && !"-".equals(reference)) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+            reader = null;
+            reference = null;
+        }
+    }
+}
@@ -15,9 +15,9 @@
  */
 package net.oneandone.inline.internal;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
+import java.util.function.Supplier;
 
 public class Command {
     public static Command create(ContextBuilder builder, String name, Method method) {
@@ -42,17 +42,48 @@ public class Command {
 
     //--
 
-    private final ContextBuilder builder;
     private final String name;
-    private final Method method;
+
+    /** null if compiled */
+    private Supplier<Command> compiler;
+
+    private volatile ContextBuilder builder;
+    private Invoker method;
 
     public Command(ContextBuilder builder, String name, Method method) {
         this.builder = builder;
         this.name = name;
-        this.method = method;
+        this.method = Invoker.forMethod(method);
+        this.compiler = null;
+    }
+
+    /** Lazy command, compiled on first use. */
+    public Command(String name, Supplier<Command> compiler) {
+        this.builder = null;
+        this.name = name;
+        this.method = null;
+        this.compiler = compiler;
     }
 
     public ContextBuilder getBuilder() {
+        ContextBuilder result;
+
+        result = builder;
+        if (result == null) {
+            result = compile();
+        }
+        return result;
+    }
+
+    private synchronized ContextBuilder compile() {
+        Command compiled;
+
+        if (builder == null) {
+            compiled = compiler.get();
+            method = compiled.method;
+            builder = compiled.builder;
+            compiler = null;
+        }
         return builder;
     }
 
@@ -62,18 +93,19 @@ public class Command {
 
     public int run(Object obj) throws Throwable {
         Object result;
-        
-        try {
-            result = method.invoke(obj);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            throw e.getCause();
-        }
+
+        getBuilder();
+        result = method.invoke(obj);
         if (result instanceof Integer) {
             return (Integer) result;
         } else {
             return 0;
         }
     }
+
+    /** Adds the members invoked to instantiate and run this command */
+    public void collect(ReflectConfig config) {
+        getBuilder().collect(config);
+        config.add(method.member());
+    }
 }
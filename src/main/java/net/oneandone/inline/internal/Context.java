@@ -16,6 +16,8 @@
 package net.oneandone.inline.internal;
 
 import net.oneandone.inline.Base;
+import net.oneandone.inline.Scope;
+import net.oneandone.inline.util.LruCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -26,6 +28,12 @@ import java.util.List;
  */
 public class Context {
     public static Context create(Context parent, Base base, String explicitName, Handle handle, String definition) {
+        return create(parent, base, explicitName, Scope.INVOCATION, handle, definition, null);
+    }
+
+    /** @param memo objects of a MEMOIZED context by arguments; null for other scopes */
+    public static Context create(Context parent, Base base, String explicitName, Scope scope, Handle handle, String definition,
+                                 LruCache<MemoKey, Object> memo) {
         String name;
         int idx;
         String syntax;
@@ -47,28 +55,47 @@ public class Context {
         } else {
             name = explicitName;
         }
-        return new Context(parent, name, handle, Source.forSyntax(base.fullSyntax(syntax)), Mapping.parse(base.fullMapping(mapping), handle.clazz()));
+        return new Context(parent, name, scope, handle, base.sources(Source.forSyntax(syntax)),
+                base.mapping(mapping, handle.clazz()), memo);
     }
 
     /** may be null */
     public final Context parent;
     public final String name;
+    public final Scope scope;
     public final Handle handle;
     public final List<Source> sources;
     public final Mapping mapping;
+    /** null unless scope is MEMOIZED */
+    public final LruCache<MemoKey, Object> memo;
 
     private ContextBuilder lazyCompiledContext;
 
     public Context(Context parent, String name, Handle handle, List<Source> sources, Mapping mapping) {
+        this(parent, name, Scope.INVOCATION, handle, sources, mapping, null);
+    }
+
+    public Context(Context parent, String name, Scope scope, Handle handle, List<Source> sources, Mapping mapping,
+                   LruCache<MemoKey, Object> memo) {
+        if ((scope == Scope.MEMOIZED) != (memo != null)) {
+            throw new IllegalArgumentException(scope + " vs " + memo);
+        }
         this.parent = parent;
         this.name = name;
+        this.scope = scope;
         this.handle = handle;
         this.sources = sources;
         this.mapping = mapping;
+        this.memo = memo;
         this.lazyCompiledContext = null;
     }
 
-    public ContextBuilder compile(Repository repository) {
+    /** @return null if not compiled yet */
+    public synchronized ContextBuilder compiled() {
+        return lazyCompiledContext;
+    }
+
+    public synchronized ContextBuilder compile(Repository repository) {
         if (lazyCompiledContext == null) {
             lazyCompiledContext = doCompile(repository);
         }
@@ -78,7 +105,7 @@ public class Context {
     private ContextBuilder doCompile(Repository repository) {
         List<Source> constructorSources;
         List<Source> extraSources;
-        ContextBuilder result;
+        List<Argument> arguments;
         ContextFactory factory;
 
         constructorSources = new ArrayList<>(sources.size());
@@ -91,14 +118,11 @@ public class Context {
             }
         }
         factory = handle.compile(this, repository, constructorSources);
-        result = new ContextBuilder(this, compiledParent(repository), factory);
-        for (Argument a : factory.arguments()) {
-            result.addArgument(a);
-        }
+        arguments = new ArrayList<>(factory.arguments());
         for (Source s : extraSources) {
-            result.addArgument(new Argument(this, s, mapping.target(repository, s.getName())));
+            arguments.add(new Argument(this, s, mapping.target(repository, s.getName())));
         }
-        return result;
+        return new ContextBuilder(this, compiledParent(repository), factory, arguments);
     }
 
     private ContextBuilder compiledParent(Repository repository) {
@@ -15,13 +15,21 @@
  */
 package net.oneandone.inline.internal;
 
+import net.oneandone.inline.Phase;
+import net.oneandone.inline.Scope;
+
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-/** Factory for properly initialized the context object */
+/**
+ * Factory for properly initialized the context object. Thread-safe: all state of an invocation is kept in the
+ * respective Actuals object and the map of instantiated contexts; the only mutable state is the object of singleton
+ * contexts.
+ */
 public class ContextBuilder {
     public static boolean isOption(String arg) {
         return arg.length() > 1 && arg.startsWith("-");
@@ -30,18 +38,157 @@ public class ContextBuilder {
     private final Context context;
     private final ContextBuilder parent;
     private final ContextFactory factory;
-    private final Map<String, Argument> options;
-    private final List<Argument> values;
 
-    public ContextBuilder(Context context, ContextBuilder parent, ContextFactory factory) {
+    /** arguments of this context passed to the factory */
+    private final Argument[] beforeArguments;
+    /** arguments of this context set on the instantiated object */
+    private final Argument[] afterArguments;
+
+    /** options of this context and all parent contexts */
+    private final Map<String, Argument> allOptions;
+    /** values of all parent contexts followed by the values of this context */
+    private final List<Argument> allValues;
+    /** number of arguments of this context and all parent contexts; slots of this context's arguments come last */
+    private final int slots;
+
+    /** this context and its parents, root first */
+    private final ContextBuilder[] chain;
+    /** whether the respective chain element has to be instantiated when running this context */
+    private final boolean[] needed;
+
+    /** null if not created yet or if this context is not a singleton */
+    private volatile Object singleton;
+
+    /** Flattens the arguments of this context and its parents into the structures needed per invocation. */
+    public ContextBuilder(Context context, ContextBuilder parent, ContextFactory factory, List<Argument> arguments) {
+        Map<String, Argument> options;
+        List<Argument> values;
+        List<Argument> before;
+        List<Argument> after;
+        int slot;
+
         this.context = context;
         this.parent = parent;
         this.factory = factory;
-        this.options = new HashMap<>();
-        this.values = new ArrayList<>();
+        slot = parent == null ? 0 : parent.slots;
+        for (Argument arg : arguments) {
+            arg.assignSlot(slot++);
+        }
+        this.slots = slot;
+        options = new HashMap<>();
+        values = new ArrayList<>();
+        before = new ArrayList<>();
+        after = new ArrayList<>();
+        for (Argument arg : arguments) {
+            addArgument(arg, options, values);
+            (arg.target.before() ? before : after).add(arg);
+        }
+        this.beforeArguments = before.toArray(new Argument[before.size()]);
+        this.afterArguments = after.toArray(new Argument[after.size()]);
+        if (parent != null) {
+            options = merge(parent.allOptions, options);
+            values.addAll(0, parent.allValues);
+        }
+        this.allOptions = Collections.unmodifiableMap(options);
+        this.allValues = Collections.unmodifiableList(values);
+        this.chain = chain(this);
+        this.needed = needed(chain);
+        this.singleton = null;
+        if (isSingleton(context.scope)) {
+            checkSingleton(arguments);
+        }
+        if (context.scope == Scope.MEMOIZED) {
+            checkMemoized();
+        }
+    }
+
+    /** Objects are looked up by arguments only, so nothing else must affect them. */
+    private void checkMemoized() {
+        if (afterArguments.length > 0) {
+            throw new InvalidCliException("memoized context must not have arguments set on the object: " + context.name);
+        }
+        for (Context dependency : factory.dependencies()) {
+            if (!ancestor(dependency).isShared()) {
+                throw new InvalidCliException("memoized context " + context.name + " depends on per-invocation context " + dependency.name);
+            }
+        }
+    }
+
+    private static boolean isSingleton(Scope scope) {
+        return scope == Scope.SINGLETON || scope == Scope.LAZY;
+    }
+
+    private void checkSingleton(List<Argument> arguments) {
+        if (!arguments.isEmpty()) {
+            throw new InvalidCliException("singleton context must not have arguments: " + context.name);
+        }
+        for (Context dependency : factory.dependencies()) {
+            if (!ancestor(dependency).isShared()) {
+                throw new InvalidCliException("singleton context " + context.name + " depends on per-invocation context " + dependency.name);
+            }
+        }
+    }
+
+    private ContextBuilder ancestor(Context ancestor) {
+        for (ContextBuilder builder = parent; builder != null; builder = builder.parent) {
+            if (builder.context == ancestor) {
+                return builder;
+            }
+        }
+        throw new IllegalStateException(ancestor.name);
+    }
+
+    private static ContextBuilder[] chain(ContextBuilder leaf) {
+        List<ContextBuilder> result;
+
+        result = new ArrayList<>();
+        for (ContextBuilder builder = leaf; builder != null; builder = builder.parent) {
+            result.add(0, builder);
+        }
+        return result.toArray(new ContextBuilder[result.size()]);
+    }
+
+    /**
+     * The leaf is needed, and so is everything it depends on, directly or indirectly. Contexts with arguments set on
+     * the object are needed for their side effects, e.g. the verbose option of the console. Dependencies always
+     * point to parents, so a single pass from the leaf to the root is enough.
+     */
+    private static boolean[] needed(ContextBuilder[] chain) {
+        boolean[] result;
+        ContextBuilder builder;
+
+        result = new boolean[chain.length];
+        result[chain.length - 1] = true;
+        for (int i = chain.length - 1; i >= 0; i--) {
+            builder = chain[i];
+            if (builder.afterArguments.length > 0) {
+                result[i] = true;
+            }
+            if (result[i]) {
+                for (Context dependency : builder.factory.dependencies()) {
+                    result[indexOf(chain, dependency)] = true;
+                }
+            }
+        }
+        return result;
     }
 
-    public void addArgument(Argument arg) {
+    private static int indexOf(ContextBuilder[] chain, Context context) {
+        for (int i = 0; i < chain.length; i++) {
+            if (chain[i].context == context) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(context.name);
+    }
+
+    /** @return true if all invocations get the same object; false for instances replaced per invocation, e.g. the console */
+    private boolean isShared() {
+        return isSingleton(context.scope)
+                || (factory instanceof Handle.IdentityContextFactory && !((Handle.IdentityContextFactory) factory).replaced);
+    }
+
+    private static void addArgument(Argument arg, Map<String, Argument> options, List<Argument> values) {
         Source source;
         String name;
 
@@ -56,6 +203,15 @@ public class ContextBuilder {
         }
     }
 
+    /** options of the child override options of the parent */
+    private static Map<String, Argument> merge(Map<String, Argument> parent, Map<String, Argument> child) {
+        Map<String, Argument> result;
+
+        result = new HashMap<>(parent);
+        result.putAll(child);
+        return result;
+    }
+
     //--
 
     /** Convenience for Testing */
@@ -65,52 +221,121 @@ public class ContextBuilder {
 
     /** @return Target */
     public Object run(Map<String, String> defaults, List<String> args) throws Throwable {
-        Actuals actuals;
-        Map<String, Argument> allOptions;
-        List<Argument> allValues;
+        return run(new Actuals(defaults), args);
+    }
 
-        actuals = new Actuals(defaults);
-        define(actuals);
-        allOptions = new HashMap<>();
-        addOptions(allOptions);
-        allValues = new ArrayList<>();
-        addValues(allValues);
-        actuals.fill(args, allOptions, allValues);
-        return instantiate(actuals, new HashMap<>());
+    /** @param actuals fresh object, to be filled with args */
+    public Object run(Actuals actuals, List<String> args) throws Throwable {
+        Map<Context, Object> instantiatedContexts;
+
+        actuals.enter(Phase.PARSE);
+        actuals.fill(args, allOptions, allValues, slots);
+        actuals.enter(Phase.INSTANTIATE);
+        instantiatedContexts = new HashMap<>();
+        for (int i = 0; i < chain.length; i++) {
+            chain[i].instantiate(actuals, instantiatedContexts, needed[i]);
+        }
+        return instantiatedContexts.get(context);
     }
 
-    private Object instantiate(Actuals actuals, Map<Context, Object> instantiatedContexts) throws Throwable {
+    /** @param needed false to check the arguments of this context without instantiating it */
+    private void instantiate(Actuals actuals, Map<Context, Object> instantiatedContexts, boolean needed) throws Throwable {
+        Object[] parameters;
         Object obj;
 
-        if (parent != null) {
-            parent.instantiate(actuals, instantiatedContexts);
+        if (isSingleton(context.scope)) {
+            if (needed) {
+                instantiatedContexts.put(context, singleton());
+            }
+            return;
+        }
+        parameters = factory.newParameters();
+        actuals.save(beforeArguments, parameters);
+        if (!needed) {
+            return;
         }
-        actuals.save(context, null);
-        obj = factory.newInstance(instantiatedContexts);
+        if (context.memo != null) {
+            obj = memoized(parameters, instantiatedContexts);
+        } else {
+            obj = factory.newInstance(parameters, instantiatedContexts);
+        }
+        obj = actuals.substitute(obj);
         instantiatedContexts.put(context, obj);
-        actuals.save(context, obj);
-        return obj;
+        actuals.save(afterArguments, obj);
     }
 
-    private void define(Actuals result) {
-        if (parent != null) {
-            parent.define(result);
+    /** Arguments are the key; context parameters are not filled in yet, so they don't affect it. */
+    private Object memoized(Object[] parameters, Map<Context, Object> instantiatedContexts) throws Throwable {
+        MemoKey key;
+        Object result;
+
+        key = new MemoKey(parameters);
+        result = context.memo.get(key);
+        if (result == null) {
+            result = factory.newInstance(parameters, instantiatedContexts);
+            if (result != null) {
+                context.memo.put(key, result);
+            }
         }
-        result.defineAll(options.values());
-        result.defineAll(values);
+        return result;
     }
 
-    private void addOptions(Map<String, Argument> result) {
-        if (parent != null) {
-            parent.addOptions(result);
+    //-- singletons
+
+    /** @return the object shared by all invocations; created when invoked for the first time */
+    public Object singleton() throws Throwable {
+        Object result;
+
+        result = singleton;
+        if (result == null) {
+            synchronized (this) {
+                if (singleton == null) {
+                    singleton = createSingleton();
+                }
+                result = singleton;
+            }
+        }
+        return result;
+    }
+
+    private Object createSingleton() throws Throwable {
+        Map<Context, Object> dependencies;
+
+        dependencies = new HashMap<>();
+        for (Context dependency : factory.dependencies()) {
+            dependencies.put(dependency, ancestor(dependency).shared());
         }
-        result.putAll(options);
+        return factory.newInstance(factory.newParameters(), dependencies);
+    }
+
+    private Object shared() throws Throwable {
+        return isSingleton(context.scope) ? singleton() : factory.newInstance(factory.newParameters(), new HashMap<>());
     }
 
-    private void addValues(List<Argument> result) {
+    /** Closes the singleton if it has been created and implements AutoCloseable; it's re-created when used again. */
+    public synchronized void closeSingleton() throws Exception {
+        Object obj;
+
+        obj = singleton;
+        singleton = null;
+        if (obj instanceof AutoCloseable) {
+            ((AutoCloseable) obj).close();
+        }
+    }
+
+    //--
+
+    /** Adds the members invoked by this context and its parents */
+    public void collect(ReflectConfig config) {
         if (parent != null) {
-            parent.addValues(result);
+            parent.collect(config);
+        }
+        factory.collect(config);
+        for (Argument argument : beforeArguments) {
+            argument.target.collect(config);
+        }
+        for (Argument argument : afterArguments) {
+            argument.target.collect(config);
         }
-        result.addAll(values);
     }
 }
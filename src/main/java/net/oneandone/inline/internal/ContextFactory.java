@@ -15,19 +15,38 @@
  */
 package net.oneandone.inline.internal;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
+/** Immutable and thread-safe: everything that changes per invocation is passed as an argument. */
 public abstract class ContextFactory {
+    private static final Object[] NO_PARAMETERS = {};
+
     private final List<Argument> arguments;
 
     public ContextFactory(List<Argument> arguments) {
-        this.arguments = arguments;
+        this.arguments = Collections.unmodifiableList(new ArrayList<>(arguments));
     }
 
     public List<Argument> arguments() {
         return arguments;
     }
 
-    public abstract Object newInstance(Map<Context, Object> instantiatedContexts) throws Throwable;
+    /** @return contexts whose objects are passed to newInstance */
+    public List<Context> dependencies() {
+        return Collections.emptyList();
+    }
+
+    /** @return a fresh array to store the parameter values of one invocation; filled by TargetParameters */
+    public Object[] newParameters() {
+        return NO_PARAMETERS;
+    }
+
+    public abstract Object newInstance(Object[] parameters, Map<Context, Object> instantiatedContexts) throws Throwable;
+
+    /** Adds the members invoked by this factory */
+    public void collect(ReflectConfig config) {
+    }
 }
@@ -16,7 +16,6 @@
 package net.oneandone.inline.internal;
 
 import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Parameter;
 import java.util.ArrayList;
@@ -46,9 +45,16 @@ public abstract class Handle {
 
     public static class InstanceHandle extends Handle {
         private final Object instance;
+        /** true if Cli.run(Console, args) replaces the instance, e.g. the console of the cli */
+        private final boolean replaced;
 
         public InstanceHandle(Object instance) {
+            this(instance, false);
+        }
+
+        public InstanceHandle(Object instance, boolean replaced) {
             this.instance = instance;
+            this.replaced = replaced;
         }
 
         public Class<?> clazz() {
@@ -59,7 +65,7 @@ public abstract class Handle {
             if (!constructorSources.isEmpty()) {
                 throw new InvalidCliException("cannot apply constructor argument to an instance of class " + instance.getClass());
             }
-            return new IdentityContextFactory(instance);
+            return new IdentityContextFactory(instance, replaced);
         }
     }
 
@@ -88,13 +94,11 @@ public abstract class Handle {
 
             result = null;
             clazz = context.handle.clazz();
-            for (Method method : clazz.getMethods()) {
-                if (name.equals(method.getName())) {
-                    if (result != null) {
-                        throw new InvalidCliException("method ambiguous: " + result + " vs " + method);
-                    }
-                    result = method;
+            for (Method method : Members.get(clazz).methods(name)) {
+                if (result != null) {
+                    throw new InvalidCliException("method ambiguous: " + result + " vs " + method);
                 }
+                result = method;
             }
             if (result == null) {
                 throw new InvalidCliException("method not found: public " + clazz.getName() + "." + name + "(...)");
@@ -128,51 +132,73 @@ public abstract class Handle {
             List<Context> remainingContext;
             List<Source> remainingSources;
             Parameter[] formals;
-            Object[] actuals;
+            Context[] contextParameters;
             Parameter formal;
-            Object ctx;
+            Context ctx;
             Source source;
 
             arguments = new ArrayList<>();
             remainingContext = context.parentList();
             remainingSources = new ArrayList<>(initialSources);
             formals = method.getParameters();
-            actuals = new Object[formals.length];
+            contextParameters = new Context[formals.length];
             for (int i = 0; i < formals.length; i++) {
                 formal = formals[i];
                 ctx = Context.remove(remainingContext, formal.getType());
                 if (ctx != null) {
-                    actuals[i] = ctx;
+                    contextParameters[i] = ctx;
                 } else if (remainingSources.isEmpty()) {
                     return null; // too many constructor arguments
                 } else {
                     source = remainingSources.remove(0);
-                    arguments.add(new Argument(context, source, new TargetParameter(repository, formal.getParameterizedType(), actuals, i)));
+                    arguments.add(new Argument(context, source, new TargetParameter(repository, formal.getParameterizedType(), i)));
                 }
             }
             if (!remainingSources.isEmpty()) {
                 return null; // not all arguments matched
             }
-            return new MethodContextFactory(target, method, arguments, actuals);
+            return new MethodContextFactory(target, method, arguments, contextParameters);
         }
 
         private final Context target;
-        private final Method method;
-        private final Object[] actuals;
+        private final Invoker method;
+        private final Context[] contextParameters;
 
-        public MethodContextFactory(Context target, Method method, List<Argument> arguments, Object[] actuals) {
+        public MethodContextFactory(Context target, Method method, List<Argument> arguments, Context[] contextParameters) {
             super(arguments);
             this.target = target;
-            this.method = method;
-            this.actuals = actuals;
+            this.method = Invoker.forMethod(method);
+            this.contextParameters = contextParameters.clone();
+        }
+
+        @Override
+        public List<Context> dependencies() {
+            List<Context> result;
+
+            result = contextList(contextParameters);
+            if (!result.contains(target)) {
+                result.add(target);
+            }
+            return result;
         }
 
         @Override
-        public Object newInstance(Map<Context, Object> instantiatedContexts) throws Throwable {
+        public Object[] newParameters() {
+            return new Object[contextParameters.length];
+        }
+
+        @Override
+        public Object newInstance(Object[] parameters, Map<Context, Object> instantiatedContexts) throws Throwable {
             Object instance;
 
             instance = instantiatedContexts.get(target);
-            return method.invoke(instance, actuals);
+            resolveContexts(contextParameters, parameters, instantiatedContexts);
+            return method.invokeAll(instance, parameters);
+        }
+
+        @Override
+        public void collect(ReflectConfig config) {
+            config.add(method.member());
         }
     }
 
@@ -192,7 +218,7 @@ public abstract class Handle {
             ContextFactory candidate;
 
             found = null;
-            for (Constructor constructor : clazz.getDeclaredConstructors()) {
+            for (Constructor constructor : Members.get(clazz).declaredConstructors()) {
                 candidate = ConstructorContextFactory.createOpt(context, repository, constructor, constructorSources);
                 if (candidate != null) {
                     if (found != null) {
@@ -229,79 +255,106 @@ public abstract class Handle {
             List<Context> remainingContext;
             List<Source> remainingSources;
             Parameter[] formals;
-            Object[] actuals;
+            Context[] contextParameters;
             Parameter formal;
-            Object ctx;
+            Context ctx;
             Source source;
 
             arguments = new ArrayList<>();
             remainingContext = context.parentList();
             remainingSources = new ArrayList<>(initialSources);
             formals = constructor.getParameters();
-            actuals = new Object[formals.length];
+            contextParameters = new Context[formals.length];
             for (int i = 0; i < formals.length; i++) {
                 formal = formals[i];
                 ctx = Context.remove(remainingContext, formal.getType());
                 if (ctx != null) {
-                    actuals[i] = ctx;
+                    contextParameters[i] = ctx;
                 } else if (remainingSources.isEmpty()) {
                     return null; // too many constructor arguments
                 } else {
                     source = remainingSources.remove(0);
-                    arguments.add(new Argument(context, source, new TargetParameter(repository, formal.getParameterizedType(), actuals, i)));
+                    arguments.add(new Argument(context, source, new TargetParameter(repository, formal.getParameterizedType(), i)));
                 }
             }
             if (!remainingSources.isEmpty()) {
                 return null; // not all arguments matched
             }
-            return new ConstructorContextFactory(constructor, actuals, arguments);
+            return new ConstructorContextFactory(constructor, contextParameters, arguments);
         }
 
-        private final Constructor<?> constructor;
-        private final Object[] constructorActuals;
+        private final Invoker constructor;
+        private final Context[] contextParameters;
 
-        public ConstructorContextFactory(Constructor<?> constructor, Object[] constructorActuals, List<Argument> arguments) {
+        public ConstructorContextFactory(Constructor<?> constructor, Context[] contextParameters, List<Argument> arguments) {
             super(arguments);
-            this.constructor = constructor;
-            this.constructorActuals = constructorActuals;
+            this.constructor = Invoker.forConstructor(constructor);
+            this.contextParameters = contextParameters.clone();
         }
 
         @Override
-        public Object newInstance(Map<Context, Object> instantiatedContexts) throws Throwable {
-            Object instance;
+        public List<Context> dependencies() {
+            return contextList(contextParameters);
+        }
 
-            for (int i = 0, max = constructorActuals.length; i < max; i++) {
-                if (constructorActuals[i] instanceof Context) {
-                    instance = instantiatedContexts.get(constructorActuals[i]);
-                    if (instance == null) {
-                        throw new IllegalStateException();
-                    }
-                    constructorActuals[i] = instance;
-                }
-            }
-            try {
-                instance = constructor.newInstance(constructorActuals);
-            } catch (InvocationTargetException e) {
-                throw e.getCause();
-            } catch (InstantiationException | IllegalAccessException e) {
-                throw new IllegalStateException("TODO", e);
-            }
-            return instance;
+        @Override
+        public Object[] newParameters() {
+            return new Object[contextParameters.length];
+        }
+
+        @Override
+        public Object newInstance(Object[] parameters, Map<Context, Object> instantiatedContexts) throws Throwable {
+            resolveContexts(contextParameters, parameters, instantiatedContexts);
+            return constructor.invokeAll(null, parameters);
         }
 
+        @Override
+        public void collect(ReflectConfig config) {
+            config.add(constructor.member());
+        }
     }
 
     public static class IdentityContextFactory extends ContextFactory {
         private final Object instance;
+        /** true if invocations may get a replacement instead of the instance */
+        public final boolean replaced;
 
-        public IdentityContextFactory(Object instance) {
+        public IdentityContextFactory(Object instance, boolean replaced) {
             super(new ArrayList<>());
             this.instance = instance;
+            this.replaced = replaced;
         }
 
         @Override
-        public Object newInstance(Map<Context, Object> instantiatedContexts) throws Throwable {
+        public Object newInstance(Object[] parameters, Map<Context, Object> instantiatedContexts) throws Throwable {
             return instance;
         }
     }
+
+    private static List<Context> contextList(Context[] contextParameters) {
+        List<Context> result;
+
+        result = new ArrayList<>();
+        for (Context context : contextParameters) {
+            if (context != null) {
+                result.add(context);
+            }
+        }
+        return result;
+    }
+
+    /** Stores the context objects of the current invocation in the respective parameters */
+    private static void resolveContexts(Context[] contextParameters, Object[] parameters, Map<Context, Object> instantiatedContexts) {
+        Object instance;
+
+        for (int i = 0, max = contextParameters.length; i < max; i++) {
+            if (contextParameters[i] != null) {
+                instance = instantiatedContexts.get(contextParameters[i]);
+                if (instance == null) {
+                    throw new IllegalStateException();
+                }
+                parameters[i] = instance;
+            }
+        }
+    }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invokes a constructor, a method or a field setter. Members are bound to method handles once when the cli is compiled,
+ * so invocations skip access checks, varargs arrays and exception wrapping. Members that cannot be bound (e.g. final
+ * fields) fall back to core reflection. Exceptions thrown by the member are passed through as is.
+ */
+public abstract class Invoker {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodType TYPE_0 = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType TYPE_1 = MethodType.methodType(Object.class, Object.class, Object.class);
+    private static final MethodType TYPE_N = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final MethodType TYPE_INT = MethodType.methodType(Object.class, Object.class, int.class);
+    private static final MethodType TYPE_LONG = MethodType.methodType(Object.class, Object.class, long.class);
+    private static final MethodType TYPE_DOUBLE = MethodType.methodType(Object.class, Object.class, double.class);
+
+    public static Invoker forConstructor(Constructor<?> constructor) {
+        MethodHandle handle;
+
+        try {
+            handle = LOOKUP.unreflectConstructor(constructor);
+        } catch (IllegalAccessException e) {
+            return new ReflectionInvoker(constructor);
+        }
+        return new HandleInvoker(constructor, MethodHandles.dropArguments(handle, 0, Object.class), constructor.getParameterCount());
+    }
+
+    public static Invoker forMethod(Method method) {
+        MethodHandle handle;
+
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return new ReflectionInvoker(method);
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return new HandleInvoker(method, handle, method.getParameterCount());
+    }
+
+    public static Invoker forSetter(Field field) {
+        MethodHandle handle;
+
+        try {
+            handle = LOOKUP.unreflectSetter(field);
+        } catch (IllegalAccessException e) {
+            return new ReflectionInvoker(field);
+        }
+        return new HandleInvoker(field, handle, 1);
+    }
+
+    //--
+
+    private final Member member;
+
+    protected Invoker(Member member) {
+        this.member = member;
+    }
+
+    /** @return the constructor, method or field invoked */
+    public Member member() {
+        return member;
+    }
+
+    /** Invokes a member without arguments; target is ignored for constructors and static methods */
+    public abstract Object invoke(Object target) throws Throwable;
+
+    /** Invokes a member with a single argument; target is ignored for constructors and static methods */
+    public abstract Object invoke(Object target, Object arg) throws Throwable;
+
+    /** Invokes a member with arbitrary arguments; target is ignored for constructors and static methods */
+    public abstract Object invokeAll(Object target, Object[] args) throws Throwable;
+
+    /** Invokes a member with a single int argument; boxes unless the member takes an int */
+    public Object invokeInt(Object target, int arg) throws Throwable {
+        return invoke(target, arg);
+    }
+
+    /** Invokes a member with a single long argument; boxes unless the member takes a long */
+    public Object invokeLong(Object target, long arg) throws Throwable {
+        return invoke(target, arg);
+    }
+
+    /** Invokes a member with a single double argument; boxes unless the member takes a double */
+    public Object invokeDouble(Object target, double arg) throws Throwable {
+        return invoke(target, arg);
+    }
+
+    //--
+
+    private static class HandleInvoker extends Invoker {
+        /** null if arity is not 0 */
+        private final MethodHandle handle0;
+        /** null if arity is not 1 */
+        private final MethodHandle handle1;
+        private final MethodHandle handleN;
+        /** null if the single argument is not an int */
+        private final MethodHandle handleInt;
+        /** null if the single argument is not a long */
+        private final MethodHandle handleLong;
+        /** null if the single argument is not a double */
+        private final MethodHandle handleDouble;
+
+        /** @param handle with the target object as first argument */
+        HandleInvoker(Member member, MethodHandle handle, int arity) {
+            super(member);
+            this.handle0 = arity == 0 ? handle.asType(TYPE_0) : null;
+            this.handle1 = arity == 1 ? handle.asType(TYPE_1) : null;
+            this.handleN = handle.asSpreader(Object[].class, arity).asType(TYPE_N);
+            this.handleInt = typed(handle, arity, int.class, TYPE_INT);
+            this.handleLong = typed(handle, arity, long.class, TYPE_LONG);
+            this.handleDouble = typed(handle, arity, double.class, TYPE_DOUBLE);
+        }
+
+        private static MethodHandle typed(MethodHandle handle, int arity, Class<?> argType, MethodType type) {
+            return arity == 1 && handle.type().parameterType(1) == argType ? handle.asType(type) : null;
+        }
+
+        @Override
+        public Object invoke(Object target) throws Throwable {
+            if (handle0 == null) {
+                return invokeAll(target, new Object[0]);
+            }
+            return (Object) handle0.invokeExact(target);
+        }
+
+        @Override
+        public Object invoke(Object target, Object arg) throws Throwable {
+            if (handle1 == null) {
+                return invokeAll(target, new Object[] { arg });
+            }
+            return (Object) handle1.invokeExact(target, arg);
+        }
+
+        @Override
+        public Object invokeAll(Object target, Object[] args) throws Throwable {
+            return (Object) handleN.invokeExact(target, args);
+        }
+
+        @Override
+        public Object invokeInt(Object target, int arg) throws Throwable {
+            if (handleInt == null) {
+                return invoke(target, arg);
+            }
+            return (Object) handleInt.invokeExact(target, arg);
+        }
+
+        @Override
+        public Object invokeLong(Object target, long arg) throws Throwable {
+            if (handleLong == null) {
+                return invoke(target, arg);
+            }
+            return (Object) handleLong.invokeExact(target, arg);
+        }
+
+        @Override
+        public Object invokeDouble(Object target, double arg) throws Throwable {
+            if (handleDouble == null) {
+                return invoke(target, arg);
+            }
+            return (Object) handleDouble.invokeExact(target, arg);
+        }
+    }
+
+    private static class ReflectionInvoker extends Invoker {
+        ReflectionInvoker(Member member) {
+            super(member);
+        }
+
+        @Override
+        public Object invoke(Object target) throws Throwable {
+            return invokeAll(target, new Object[0]);
+        }
+
+        @Override
+        public Object invoke(Object target, Object arg) throws Throwable {
+            return invokeAll(target, new Object[] { arg });
+        }
+
+        @Override
+        public Object invokeAll(Object target, Object[] args) throws Throwable {
+            Member member;
+
+            member = member();
+            try {
+                if (member instanceof Constructor) {
+                    return ((Constructor<?>) member).newInstance(args);
+                } else if (member instanceof Method) {
+                    return ((Method) member).invoke(target, args);
+                } else {
+                    if (args.length != 1) {
+                        throw new IllegalArgumentException("1 argument expected, got " + args.length);
+                    }
+                    ((Field) member).set(target, args[0]);
+                    return null;
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new IllegalStateException(member.toString(), e);
+            }
+        }
+    }
+}
@@ -24,10 +24,15 @@ import java.util.Map;
 
 public class Mapping {
     public static Mapping parse(String str, Class<?> clazz) {
+        return parse(new Mapping(), str, clazz);
+    }
+
+    /** @param inherited mappings to start with, not modified */
+    public static Mapping parse(Mapping inherited, String str, Class<?> clazz) {
         Mapping result;
         int idx;
 
-        result = new Mapping();
+        result = new Mapping(inherited);
         for (String item : Split.split(str)) {
             idx = item.indexOf('=');
             if (idx != -1) {
@@ -64,6 +69,13 @@ public class Mapping {
         this.iteratedMethods = new HashMap<>();
     }
 
+    public Mapping(Mapping orig) {
+        this.command = orig.command;
+        this.fields = new HashMap<>(orig.fields);
+        this.methods = new HashMap<>(orig.methods);
+        this.iteratedMethods = new HashMap<>(orig.iteratedMethods);
+    }
+
     public String getCommand() {
         return command;
     }
@@ -78,9 +90,8 @@ public class Mapping {
     public void addField(String argument, Class<?> clazz, String name) {
         Field field;
 
-        try {
-            field = clazz.getDeclaredField(name);
-        } catch (NoSuchFieldException e) {
+        field = Members.get(clazz).declaredField(name);
+        if (field == null) {
             throw new InvalidCliException("no such field: " + clazz.getName() + "." + name);
         }
         if (fields.put(argument, field) != null) {
@@ -97,8 +108,8 @@ public class Mapping {
         if (iterable) {
             name = name.substring(0, name.length() - 1);
         }
-        for (Method candidate : clazz.getMethods()) {
-            if (candidate.getParameterCount() == 1 && candidate.getName().equals(name)) {
+        for (Method candidate : Members.get(clazz).methods(name)) {
+            if (candidate.getParameterCount() == 1) {
                 if (method != null) {
                     throw new InvalidCliException("method mapping ambiguous: " + name);
                 }
@@ -0,0 +1,91 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reflective members of a class. Scanned once per class and shared by all contexts, mappings and bases referring to
+ * the class, instead of calling getMethods or getDeclaredConstructors for every definition.
+ */
+public class Members {
+    private static final ClassValue<Members> CACHE = new ClassValue<Members>() {
+        @Override
+        protected Members computeValue(Class<?> type) {
+            return new Members(type);
+        }
+    };
+
+    public static Members get(Class<?> clazz) {
+        return CACHE.get(clazz);
+    }
+
+    //--
+
+    private final Constructor<?>[] declaredConstructors;
+
+    /** public methods, including inherited ones, by name */
+    private final Map<String, List<Method>> methods;
+
+    private final Map<String, Field> declaredFields;
+
+    private Members(Class<?> clazz) {
+        List<Method> lst;
+
+        this.declaredConstructors = clazz.getDeclaredConstructors();
+        this.methods = new HashMap<>();
+        for (Method method : clazz.getMethods()) {
+            lst = methods.get(method.getName());
+            if (lst == null) {
+                lst = new ArrayList<>(1);
+                methods.put(method.getName(), lst);
+            }
+            lst.add(method);
+        }
+        this.declaredFields = new HashMap<>();
+        for (Field field : clazz.getDeclaredFields()) {
+            declaredFields.put(field.getName(), field);
+        }
+    }
+
+    public List<Constructor<?>> declaredConstructors() {
+        List<Constructor<?>> result;
+
+        result = new ArrayList<>(declaredConstructors.length);
+        Collections.addAll(result, declaredConstructors);
+        return result;
+    }
+
+    /** @return public methods with the specified name, including inherited ones; never null */
+    public List<Method> methods(String name) {
+        List<Method> result;
+
+        result = methods.get(name);
+        return result == null ? Collections.emptyList() : Collections.unmodifiableList(result);
+    }
+
+    /** @return null if not found */
+    public Field declaredField(String name) {
+        return declaredFields.get(name);
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.util.Arrays;
+
+/** Arguments of a memoized context; compares array arguments by content. */
+public final class MemoKey {
+    private final Object[] parameters;
+
+    public MemoKey(Object[] parameters) {
+        this.parameters = parameters.clone();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof MemoKey && Arrays.deepEquals(parameters, ((MemoKey) obj).parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.deepHashCode(parameters);
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.deepToString(parameters);
+    }
+}
@@ -15,9 +15,13 @@
  */
 package net.oneandone.inline.internal;
 
+import net.oneandone.inline.util.LruCache;
+
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.function.Function;
 
 /** Factory to create an object from a String */
@@ -26,8 +30,19 @@ public class Primitive {
     private final Function<String, ? extends Object> parser;
     public final String expected;
     private final Object defaultValue;
+    /** parse results by string; null if not cached */
+    private final LruCache<String, Object> cache;
+    /** converts all values of a list argument at once; null to parse them one by one */
+    private final Function<List<String>, List<?>> bulkParser;
+    /** true to parse the values of list arguments concurrently */
+    private final boolean parallel;
 
     public Primitive(Type raw, String expected, Object dflt, Function<String, ? extends Object> parser) {
+        this(raw, expected, dflt, parser, null, null, false);
+    }
+
+    private Primitive(Type raw, String expected, Object dflt, Function<String, ? extends Object> parser, LruCache<String, Object> cache,
+                      Function<List<String>, List<?>> bulkParser, boolean parallel) {
         if (raw instanceof Class) {
             this.raw = (Class) raw;
         } else {
@@ -49,11 +64,91 @@ public class Primitive {
         this.parser = parser;
         this.expected = expected;
         this.defaultValue = dflt;
+        this.cache = cache;
+        this.bulkParser = bulkParser;
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return primitive that caches parse results by string; results are shared between arguments and invocations, so
+     *   they have to be immutable. Failures are not cached. Not for bulk-converting primitives: their list values would
+     *   bypass the cache.
+     */
+    public Primitive cached(int maxSize, Duration ttl) {
+        checkPlain("cache");
+        if (bulkParser != null) {
+            throw new IllegalArgumentException("cannot cache bulk-converting primitive for " + raw.getName());
+        }
+        return new Primitive(raw, expected, defaultValue, parser, new LruCache<>(maxSize, ttl), bulkParser, parallel);
+    }
+
+    /**
+     * @param bulk gets all values of a list or array argument and returns the converted values in the same order;
+     *   single values are still converted by the normal parser; not for cached primitives
+     */
+    public Primitive bulk(Function<List<String>, List<?>> bulk) {
+        checkPlain("bulk-convert");
+        if (cache != null) {
+            throw new IllegalArgumentException("cannot bulk-convert cached primitive for " + raw.getName());
+        }
+        return new Primitive(raw, expected, defaultValue, parser, cache, bulk, parallel);
+    }
+
+    /** @return primitive that parses the values of list and array arguments concurrently; the parser has to be thread-safe */
+    public Primitive parallel() {
+        checkPlain("parallelize");
+        return new Primitive(raw, expected, defaultValue, parser, cache, bulkParser, true);
+    }
+
+    /** specialized primitives parse without boxing; caching and bulk conversion would defeat that */
+    private void checkPlain(String what) {
+        if (getClass() != Primitive.class) {
+            throw new IllegalArgumentException("cannot " + what + " " + getClass().getSimpleName() + " for " + raw.getName());
+        }
+    }
+
+    public boolean isBulk() {
+        return bulkParser != null;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    /** @return converted values as returned by the bulk parser; check them with {@link #checkBulk} */
+    public List<?> parseBulk(List<String> strings) {
+        return bulkParser.apply(strings);
+    }
+
+    /** @throws IllegalStateException if the bulk parser did not return one value per string */
+    public List<?> checkBulk(List<String> strings, List<?> values) {
+        if (values.size() != strings.size()) {
+            throw new IllegalStateException("bulk parser for " + raw.getName() + " returned " + values.size()
+                    + " values for " + strings.size() + " strings");
+        }
+        return values;
+    }
+
+    /** @return null if parse results are not cached */
+    public LruCache<String, Object> getCache() {
+        return cache;
     }
 
     public final Object parse(String str) {
-        return parser.apply(str);
-    };
+        Object result;
+
+        if (cache == null) {
+            return parser.apply(str);
+        }
+        result = cache.get(str);
+        if (result == null) {
+            result = parser.apply(str);
+            if (result != null) {
+                cache.put(str, result);
+            }
+        }
+        return result;
+    }
 
     public Class<?> getRawType() {
         return raw;
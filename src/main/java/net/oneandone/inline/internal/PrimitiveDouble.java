@@ -0,0 +1,32 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.util.function.ToDoubleFunction;
+
+/** Primitive for double values. Parses without boxing, see Target.doSetDouble. */
+public class PrimitiveDouble extends Primitive {
+    private final ToDoubleFunction<String> doubleParser;
+
+    public PrimitiveDouble(String expected, Object dflt, ToDoubleFunction<String> parser) {
+        super(Double.class, expected, dflt, str -> parser.applyAsDouble(str));
+        this.doubleParser = parser;
+    }
+
+    public double parseDouble(String str) {
+        return doubleParser.applyAsDouble(str);
+    }
+}
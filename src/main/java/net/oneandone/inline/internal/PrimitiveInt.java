@@ -0,0 +1,32 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.util.function.ToIntFunction;
+
+/** Primitive for int values. Parses without boxing, see Target.doSetInt. */
+public class PrimitiveInt extends Primitive {
+    private final ToIntFunction<String> intParser;
+
+    public PrimitiveInt(String expected, Object dflt, ToIntFunction<String> parser) {
+        super(Integer.class, expected, dflt, str -> parser.applyAsInt(str));
+        this.intParser = parser;
+    }
+
+    public int parseInt(String str) {
+        return intParser.applyAsInt(str);
+    }
+}
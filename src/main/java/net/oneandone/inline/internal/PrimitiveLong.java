@@ -0,0 +1,32 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.util.function.ToLongFunction;
+
+/** Primitive for long values. Parses without boxing, see Target.doSetLong. */
+public class PrimitiveLong extends Primitive {
+    private final ToLongFunction<String> longParser;
+
+    public PrimitiveLong(String expected, Object dflt, ToLongFunction<String> parser) {
+        super(Long.class, expected, dflt, str -> parser.applyAsLong(str));
+        this.longParser = parser;
+    }
+
+    public long parseLong(String str) {
+        return longParser.applyAsLong(str);
+    }
+}
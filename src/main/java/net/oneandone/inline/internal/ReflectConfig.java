@@ -0,0 +1,126 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Collects the classes and members Inline accesses reflectively and renders them as reflection configuration
+ * for GraalVM native-image (reflect-config.json).
+ */
+public class ReflectConfig {
+    /** maps class names to entries, sorted to get reproducible files */
+    private final Map<String, Entry> classes;
+
+    public ReflectConfig() {
+        this.classes = new TreeMap<>();
+    }
+
+    public void add(Member member) {
+        if (member instanceof Constructor) {
+            addMethod(member.getDeclaringClass(), "<init>", ((Constructor<?>) member).getParameterTypes());
+        } else if (member instanceof Method) {
+            addMethod(member.getDeclaringClass(), member.getName(), ((Method) member).getParameterTypes());
+        } else if (member instanceof Field) {
+            entry(member.getDeclaringClass()).fields.add("{ \"name\": " + quote(member.getName()) + ", \"allowWrite\": true }");
+        } else {
+            throw new IllegalArgumentException(member.toString());
+        }
+    }
+
+    /** Enum values are obtained via Class.getEnumConstants */
+    public void addEnum(Class<?> clazz) {
+        addMethod(clazz, "values", new Class<?>[0]);
+    }
+
+    private void addMethod(Class<?> clazz, String name, Class<?>[] parameterTypes) {
+        StringBuilder str;
+
+        str = new StringBuilder();
+        str.append("{ \"name\": ").append(quote(name)).append(", \"parameterTypes\": [");
+        for (int i = 0; i < parameterTypes.length; i++) {
+            str.append(i == 0 ? " " : ", ");
+            str.append(quote(parameterTypes[i].getTypeName()));
+        }
+        str.append(parameterTypes.length == 0 ? "] }" : " ] }");
+        entry(clazz).methods.add(str.toString());
+    }
+
+    private Entry entry(Class<?> clazz) {
+        Entry result;
+
+        result = classes.get(clazz.getName());
+        if (result == null) {
+            result = new Entry();
+            classes.put(clazz.getName(), result);
+        }
+        return result;
+    }
+
+    public String toJson() {
+        StringBuilder result;
+        boolean first;
+        Entry entry;
+
+        result = new StringBuilder();
+        result.append("[");
+        first = true;
+        for (Map.Entry<String, Entry> e : classes.entrySet()) {
+            entry = e.getValue();
+            result.append(first ? "\n" : ",\n");
+            first = false;
+            result.append("  {\n");
+            result.append("    \"name\": ").append(quote(e.getKey()));
+            list(result, "methods", entry.methods);
+            list(result, "fields", entry.fields);
+            result.append("\n  }");
+        }
+        result.append("\n]\n");
+        return result.toString();
+    }
+
+    private static void list(StringBuilder result, String name, Set<String> entries) {
+        boolean first;
+
+        if (entries.isEmpty()) {
+            return;
+        }
+        result.append(",\n    ").append(quote(name)).append(": [");
+        first = true;
+        for (String entry : entries) {
+            result.append(first ? "\n" : ",\n");
+            first = false;
+            result.append("      ").append(entry);
+        }
+        result.append("\n    ]");
+    }
+
+    private static String quote(String str) {
+        return '"' + str.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+
+    private static class Entry {
+        public final Set<String> methods = new TreeSet<>();
+        public final Set<String> fields = new TreeSet<>();
+    }
+}
@@ -15,26 +15,42 @@
  */
 package net.oneandone.inline.internal;
 
+import net.oneandone.inline.util.LruCache;
+
 import java.io.File;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 
-/** Defines how to instantiate type from command line arguments. */
+/**
+ * Defines how to instantiate type from command line arguments. Thread-safe: primitives for classes without explicit
+ * registration are resolved once per class via the factories registered for their supertypes, e.g. for enums.
+ */
 public class Repository {
+    /** explicitly registered primitives */
     private final Map<Class<?>, Primitive> map;
-    
+    /** supertype factories in registration order; later registrations take precedence */
+    private final List<Factory> factories;
+    /** primitives resolved by factories; cleared when registering */
+    private final Map<Class<?>, Primitive> resolved;
+
     public Repository() {
-        map = new HashMap<>();
-        registerWrapper(Integer.class, Integer.TYPE, "integer", 0, Integer::parseInt);
-        registerWrapper(Long.class, Long.TYPE, "long integer", (long) 0, Long::parseLong);
+        map = new ConcurrentHashMap<>();
+        factories = new CopyOnWriteArrayList<>();
+        resolved = new ConcurrentHashMap<>();
+        registerSupertype(Enum.class, clazz -> forEnum((Class) clazz));
+        registerWrapper(Integer.class, Integer.TYPE, new PrimitiveInt("integer", 0, Integer::parseInt));
+        registerWrapper(Long.class, Long.TYPE, new PrimitiveLong("long integer", (long) 0, Long::parseLong));
         registerWrapper(Float.class, Float.TYPE, "float number", (float) 0, Float::parseFloat);
-        registerWrapper(Double.class, Double.TYPE, "double", (double) 0, Double::parseDouble);
+        registerWrapper(Double.class, Double.TYPE, new PrimitiveDouble("double", (double) 0, Double::parseDouble));
         registerWrapper(Boolean.class, Boolean.TYPE, "'true' or 'false'", false, str -> {
             switch (str.toLowerCase()) {
                 case "true":
@@ -69,63 +85,198 @@ public class Repository {
 
     public Primitive get(Class<?> clazz) {
         Primitive primitive;
-        
+
         primitive = map.get(clazz);
         if (primitive == null) {
-            if (!Enum.class.isAssignableFrom(clazz)) {
-                throw new InvalidCliException("unknown primitive: " + clazz);
+            primitive = resolved.get(clazz);
+            if (primitive == null) {
+                primitive = resolve(clazz);
+                resolved.put(clazz, primitive);
             }
-            primitive = forEnum((Class) clazz);
-            map.put(clazz, primitive);
         }
         return primitive;
     }
 
+    /** @return primitive created by the factory of the most specific supertype; superclasses take precedence over interfaces */
+    private Primitive resolve(Class<?> clazz) {
+        Factory factory;
+        Primitive result;
+
+        factory = null;
+        for (Class<?> type = clazz; type != null && factory == null; type = type.getSuperclass()) {
+            factory = lookupFactory(type);
+        }
+        if (factory == null) {
+            factory = lookupInterfaceFactory(clazz);
+        }
+        if (factory == null) {
+            throw new InvalidCliException("unknown primitive: " + clazz);
+        }
+        result = factory.create.apply(clazz);
+        if (result == null) {
+            throw new InvalidCliException("unknown primitive: " + clazz);
+        }
+        return result;
+    }
+
+    private Factory lookupInterfaceFactory(Class<?> clazz) {
+        Factory result;
+
+        for (Class<?> type = clazz; type != null; type = type.getSuperclass()) {
+            for (Class<?> ifc : type.getInterfaces()) {
+                result = lookupFactory(ifc);
+                if (result == null) {
+                    result = lookupInterfaceFactory(ifc);
+                }
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Factory lookupFactory(Class<?> type) {
+        Factory factory;
+
+        for (int i = factories.size() - 1; i >= 0; i--) {
+            factory = factories.get(i);
+            if (factory.supertype == type) {
+                return factory;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers a factory for subclasses or implementations of supertype. The factory is invoked once per class, it
+     * may return null if it cannot handle the class. Explicit registrations take precedence over factories.
+     */
+    public void registerSupertype(Class<?> supertype, Function<Class<?>, Primitive> create) {
+        factories.add(new Factory(supertype, create));
+        resolved.clear();
+    }
+
+    private static class Factory {
+        public final Class<?> supertype;
+        public final Function<Class<?>, Primitive> create;
+
+        Factory(Class<?> supertype, Function<Class<?>, Primitive> create) {
+            this.supertype = supertype;
+            this.create = create;
+        }
+    }
+
     public void registerWrapper(Class<?> wrapper, Class<?> type, String expected, Object defaultValue, Function<String, ? extends Object> parser) {
         map.put(wrapper, new Primitive(wrapper, expected, null, parser));
         map.put(type, new Primitive(wrapper, expected, defaultValue, parser));
     }
 
+    /** @param primitive for the primitive type, parsing without boxing */
+    private void registerWrapper(Class<?> wrapper, Class<?> type, Primitive primitive) {
+        map.put(wrapper, new Primitive(wrapper, primitive.expected, null, primitive::parse));
+        map.put(type, primitive);
+    }
+
     public Primitive register(Class<?> clazz, String expected, Object defaultValue, Function<String, ? extends Object> parser) {
         Primitive primitive;
 
         primitive = new Primitive(clazz, expected, defaultValue, parser);
         map.put(primitive.getRawType(), primitive);
+        resolved.remove(primitive.getRawType());
         return primitive;
     }
 
+    /**
+     * Replaces the primitive for clazz by one that caches parse results, see Primitive.cached. Affects arguments of
+     * exactly this class compiled afterwards; subclasses resolved via supertype factories keep their own primitives.
+     */
+    public Primitive cache(Class<?> clazz, int maxSize, Duration ttl) {
+        Primitive primitive;
+
+        primitive = getExact(clazz, "cache").cached(maxSize, ttl);
+        map.put(clazz, primitive);
+        return primitive;
+    }
+
+    /**
+     * Adds a bulk parser to the primitive for clazz, see Primitive.bulk. Affects arguments of exactly this class compiled
+     * afterwards.
+     */
+    public Primitive bulk(Class<?> clazz, Function<List<String>, List<?>> bulk) {
+        Primitive primitive;
+
+        primitive = getExact(clazz, "bulk-convert").bulk(bulk);
+        map.put(clazz, primitive);
+        return primitive;
+    }
+
+    /**
+     * Parses list values for clazz concurrently, see Primitive.parallel. Affects arguments of exactly this class compiled
+     * afterwards.
+     */
+    public Primitive parallel(Class<?> clazz) {
+        Primitive primitive;
+
+        primitive = getExact(clazz, "parallelize").parallel();
+        map.put(clazz, primitive);
+        return primitive;
+    }
+
+    /**
+     * @throws IllegalArgumentException for supertypes without explicit registration: the replacement would be
+     *   reported for clazz but never used for its subclasses
+     */
+    private Primitive getExact(Class<?> clazz, String what) {
+        if (!map.containsKey(clazz) && lookupFactory(clazz) != null) {
+            throw new IllegalArgumentException("cannot " + what + " supertype " + clazz.getName() + ", only its subclasses");
+        }
+        return get(clazz);
+    }
+
+    /** @return parse caches by class */
+    public Map<Class<?>, LruCache<String, Object>> caches() {
+        Map<Class<?>, LruCache<String, Object>> result;
+
+        result = new LinkedHashMap<>();
+        for (Map.Entry<Class<?>, Primitive> entry : map.entrySet()) {
+            if (entry.getValue().getCache() != null) {
+                result.put(entry.getKey(), entry.getValue().getCache());
+            }
+        }
+        return result;
+    }
+
     //--
 
     public static Primitive forEnum(Class<? extends Enum> clazz) {
-        Enum[] values = getValues(clazz);
-        return new Primitive(clazz, expected(values), values[0], str -> {
-            String name;
-
-            str = normalizeEnum(str);
-            for (Enum e : values) {
-                name = normalizeEnum(e.name());
-                if (name.equals(str)) {
-                    return e;
-                }
+        Enum[] values;
+        Map<String, Enum> index;
+
+        values = getValues(clazz);
+        index = new HashMap<>();
+        for (Enum e : values) {
+            index.put(normalizeEnum(e.name()), e);
+        }
+        return new Primitive(clazz, expected(values), values.length == 0 ? null : values[0], str -> {
+            Enum result;
+
+            result = index.get(normalizeEnum(str));
+            if (result == null) {
+                throw new RuntimeException();
             }
-            throw new RuntimeException();
+            return result;
         });
     }
 
     public static <T extends Enum<?>> T[] getValues(Class<T> clazz) {
-        Method m;
+        T[] result;
 
-        try {
-            m = clazz.getDeclaredMethod("values");
-        } catch (SecurityException | NoSuchMethodException e) {
-            throw new RuntimeException(e);
-        }
-        m.setAccessible(true);
-        try {
-            return (T[]) m.invoke(null);
-        } catch (IllegalArgumentException | IllegalAccessException | InvocationTargetException e) {
-            throw new RuntimeException(e);
+        result = clazz.getEnumConstants();
+        if (result == null) {
+            throw new IllegalArgumentException("not an enum: " + clazz.getName());
         }
+        return result;
     }
 
     private static String expected(Enum[] values) {
@@ -82,6 +82,27 @@ public class Source {
         return result;
     }
 
+    /** @return first followed by second; first if second is empty */
+    public static List<Source> concat(List<Source> first, List<Source> second) {
+        List<Source> result;
+
+        if (second.isEmpty()) {
+            return first;
+        }
+        if (first.isEmpty()) {
+            return second;
+        }
+        result = new ArrayList<>(first.size() + second.size());
+        result.addAll(first);
+        for (Source source : second) {
+            if (lookup(first, source.getName()) != null) {
+                throw new InvalidCliException("duplicate argument: " + source.getName());
+            }
+            result.add(source);
+        }
+        return result;
+    }
+
     private static Source lookup(List<Source> sources, String name) {
         for (Source source : sources) {
             if (source.getName().equals(name)) {
@@ -0,0 +1,98 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import net.oneandone.inline.Phase;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures nanoseconds and bytes allocated by the current thread per phase of an invocation. Not thread-safe,
+ * created per invocation.
+ */
+public class Stopwatch {
+    private static final int PHASES = Phase.values().length;
+
+    /** null if the jvm cannot measure allocations */
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private static com.sun.management.ThreadMXBean threads() {
+        Object bean;
+
+        try {
+            bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemorySupported()
+                    && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled()) {
+                return (com.sun.management.ThreadMXBean) bean;
+            }
+        } catch (LinkageError | SecurityException e) {
+            // not a HotSpot jvm
+        }
+        return null;
+    }
+
+    //--
+
+    private final long thread;
+    private final long[] nanos;
+    private final long[] bytes;
+
+    /** null if not measuring */
+    private Phase current;
+    private long startNanos;
+    private long startBytes;
+
+    public Stopwatch() {
+        this.thread = Thread.currentThread().getId();
+        this.nanos = new long[PHASES];
+        this.bytes = new long[PHASES];
+        this.current = null;
+    }
+
+    /**
+     * Stops measuring the current phase and starts the specified one.
+     *
+     * @param phase null to stop measuring
+     * @return the phase measured so far, null if none
+     */
+    public Phase enter(Phase phase) {
+        Phase result;
+        long now;
+        long allocated;
+
+        now = System.nanoTime();
+        allocated = THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(thread);
+        result = current;
+        if (result != null) {
+            nanos[result.ordinal()] += now - startNanos;
+            bytes[result.ordinal()] += allocated - startBytes;
+        }
+        current = phase;
+        startNanos = now;
+        startBytes = allocated;
+        return result;
+    }
+
+    public long[] nanos() {
+        return nanos.clone();
+    }
+
+    /** @return null if the jvm cannot measure allocations */
+    public long[] bytes() {
+        return THREADS == null ? null : bytes.clone();
+    }
+}
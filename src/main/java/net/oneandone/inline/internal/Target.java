@@ -22,19 +22,37 @@ import java.util.List;
 /** Defines where to store values from the command line. */
 public abstract class Target {
     private final boolean list;
+    /** true for Iterable types: values may be passed lazily */
+    private final boolean iterable;
+    /** null if not an array */
+    private final Class<?> arrayComponent;
     private final Primitive component;
 
     public Target(Repository repository, Type type) {
         ParameterizedType p;
         Type[] args;
+        Class<?> clazz;
 
         if (type instanceof Class) {
-            this.list = false;
-            this.component = repository.get((Class) type);
+            clazz = (Class) type;
+            if (clazz.isArray()) {
+                if (clazz.getComponentType().isArray()) {
+                    throw new InvalidCliException("too much nesting: " + clazz.getTypeName());
+                }
+                this.list = true;
+                this.iterable = false;
+                this.arrayComponent = clazz.getComponentType();
+                this.component = repository.get(arrayComponent);
+            } else {
+                this.list = false;
+                this.iterable = false;
+                this.arrayComponent = null;
+                this.component = repository.get(clazz);
+            }
         } else if (type instanceof ParameterizedType) {
             p = (ParameterizedType) type;
             args = p.getActualTypeArguments();
-            if (!p.getRawType().equals(List.class)) {
+            if (!p.getRawType().equals(List.class) && !p.getRawType().equals(Iterable.class)) {
                 throw new InvalidCliException("not a list: " + type.toString());
             }
             if (args.length != 1) {
@@ -44,6 +62,8 @@ public abstract class Target {
                 throw new InvalidCliException("too much nesting: " + type.toString());
             }
             this.list = true;
+            this.iterable = p.getRawType().equals(Iterable.class);
+            this.arrayComponent = null;
             this.component = repository.get((Class) args[0]);
         } else {
             throw new InvalidCliException("unsupported type: " + type);
@@ -52,6 +72,8 @@ public abstract class Target {
 
     public Target(boolean list, Primitive component) {
         this.list = list;
+        this.iterable = false;
+        this.arrayComponent = null;
         this.component = component;
     }
 
@@ -61,10 +83,81 @@ public abstract class Target {
     /** value is an instance of the reflection type */
     public abstract void doSet(Object dest, Object value);
 
+    /** @return invoker to store single values without boxing; null to use doSet */
+    protected Invoker setter() {
+        return null;
+    }
+
+    public void doSetInt(Object dest, int value) {
+        Invoker setter;
+
+        setter = setter();
+        if (setter == null) {
+            doSet(dest, value);
+        } else {
+            try {
+                setter.invokeInt(dest, value);
+            } catch (Error | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("unexpected exception", e);
+            }
+        }
+    }
+
+    public void doSetLong(Object dest, long value) {
+        Invoker setter;
+
+        setter = setter();
+        if (setter == null) {
+            doSet(dest, value);
+        } else {
+            try {
+                setter.invokeLong(dest, value);
+            } catch (Error | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("unexpected exception", e);
+            }
+        }
+    }
+
+    public void doSetDouble(Object dest, double value) {
+        Invoker setter;
+
+        setter = setter();
+        if (setter == null) {
+            doSet(dest, value);
+        } else {
+            try {
+                setter.invokeDouble(dest, value);
+            } catch (Error | RuntimeException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException("unexpected exception", e);
+            }
+        }
+    }
+
+    /** true for lists and arrays */
     public boolean isList() {
         return list;
     }
 
+    /** true if this target is an Iterable, i.e. it accepts values computed while iterating */
+    public boolean isIterable() {
+        return iterable;
+    }
+
+    /** @return component type if this target is an array, null otherwise */
+    public Class<?> arrayComponent() {
+        return arrayComponent;
+    }
+
+    public Primitive component() {
+        return component;
+    }
+
     public boolean isBoolean() {
         return !list && (component.getRawType().equals(Boolean.TYPE) || component.getRawType().equals(Boolean.class));
     }
@@ -80,4 +173,11 @@ public abstract class Target {
     public String expected() {
         return component.expected;
     }
+
+    /** Adds the members invoked to store or convert values */
+    public void collect(ReflectConfig config) {
+        if (Enum.class.isAssignableFrom(component.getRawType())) {
+            config.addEnum(component.getRawType());
+        }
+    }
 }
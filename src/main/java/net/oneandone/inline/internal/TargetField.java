@@ -29,11 +29,12 @@ public class TargetField extends Target {
     
     //--
 
-    private final Field field;
-    
+    private final Invoker setter;
+
     public TargetField(Repository repository, Type type, Field field) {
         super(repository, type);
-        this.field = field;
+        field.setAccessible(true);
+        this.setter = Invoker.forSetter(field);
     }
 
     @Override
@@ -43,11 +44,23 @@ public class TargetField extends Target {
 
     @Override
     public void doSet(Object obj, Object value) {
-        field.setAccessible(true);
         try {
-            field.set(obj, value);
-        } catch (IllegalAccessException e) {
+            setter.invoke(obj, value);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
             throw new IllegalStateException(e);
         }
     }
+
+    @Override
+    protected Invoker setter() {
+        return setter;
+    }
+
+    @Override
+    public void collect(ReflectConfig config) {
+        super.collect(config);
+        config.add(setter.member());
+    }
 }
@@ -15,9 +15,6 @@
  */
 package net.oneandone.inline.internal;
 
-import net.oneandone.inline.ArgumentException;
-
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Parameter;
@@ -48,11 +45,11 @@ public class TargetMethod extends Target {
     
     //--
 
-    private final Method method;
-    
+    private final Invoker method;
+
     public TargetMethod(Repository repository, Type type, Method method) {
         super(repository, type);
-        this.method = method;
+        this.method = Invoker.forMethod(method);
     }
 
     public boolean before() {
@@ -61,26 +58,23 @@ public class TargetMethod extends Target {
 
     @Override
     public void doSet(Object dest, Object value) {
-        Throwable cause;
-        
         try {
             method.invoke(dest, value);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException(value + ":" + value.getClass(), e);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        } catch (InvocationTargetException e) {
-            cause = e.getCause();
-            if (cause instanceof Error) {
-                throw (Error) cause;
-            }
-            if (cause instanceof ArgumentException) {
-                throw (ArgumentException) cause;
-            }
-            if (cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-            }
-            throw new IllegalStateException("unexpected exception" , cause);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("unexpected exception" , e);
         }
     }
+
+    @Override
+    protected Invoker setter() {
+        return method;
+    }
+
+    @Override
+    public void collect(ReflectConfig config) {
+        super.collect(config);
+        config.add(method.member());
+    }
 }
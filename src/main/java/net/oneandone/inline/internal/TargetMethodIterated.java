@@ -15,18 +15,15 @@
  */
 package net.oneandone.inline.internal;
 
-import net.oneandone.inline.ArgumentException;
-
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.List;
 
 public class TargetMethodIterated extends Target {
-    private final Method method;
+    private final Invoker method;
 
     public TargetMethodIterated(boolean list, Primitive component, Method method) {
         super(list, component);
-        this.method = method;
+        this.method = Invoker.forMethod(method);
     }
 
     public boolean before() {
@@ -36,29 +33,26 @@ public class TargetMethodIterated extends Target {
     @Override
     public void doSet(Object dest, Object value) {
         List<Object> lst;
-        Throwable cause;
 
         lst = (List) value;
+        for (Object item : lst) {
+            doSetItem(dest, item);
+        }
+    }
+
+    public void doSetItem(Object dest, Object item) {
         try {
-            for (Object item : lst) {
-                method.invoke(dest, item);
-            }
-        } catch (IllegalArgumentException e) {
-            throw new IllegalStateException(value + ":" + value.getClass(), e);
-        } catch (IllegalAccessException e) {
-            throw new IllegalStateException(e);
-        } catch (InvocationTargetException e) {
-            cause = e.getCause();
-            if (cause instanceof Error) {
-                throw (Error) cause;
-            }
-            if (cause instanceof ArgumentException) {
-                throw (ArgumentException) cause;
-            }
-            if (cause instanceof RuntimeException) {
-                throw (RuntimeException) cause;
-            }
-            throw new IllegalStateException("unexpected exception" , cause);
+            method.invoke(dest, item);
+        } catch (Error | RuntimeException e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException("unexpected exception" , e);
         }
     }
+
+    @Override
+    public void collect(ReflectConfig config) {
+        super.collect(config);
+        config.add(method.member());
+    }
 }
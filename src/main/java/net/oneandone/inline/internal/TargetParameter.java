@@ -17,13 +17,12 @@ package net.oneandone.inline.internal;
 
 import java.lang.reflect.Type;
 
+/** Stores values in the parameter array of the current invocation, see ContextFactory.newParameters. */
 public class TargetParameter extends Target {
-    private final Object[] actuals;
     private final int idx;
 
-    protected TargetParameter(Repository repository, Type type, Object[] actuals, int idx) {
+    protected TargetParameter(Repository repository, Type type, int idx) {
         super(repository, type);
-        this.actuals = actuals;
         this.idx = idx;
     }
 
@@ -34,6 +33,6 @@ public class TargetParameter extends Target {
 
     @Override
     public void doSet(Object dest, Object value) {
-        actuals[idx] = value;
+        ((Object[]) dest)[idx] = value;
     }
 }
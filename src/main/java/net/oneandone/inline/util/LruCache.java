@@ -0,0 +1,116 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded map that evicts the least recently used entry, and entries older than an optional time to live. Counts hits,
+ * misses and evictions. Thread-safe; callers compute missing values without holding the lock, so concurrent misses
+ * for the same key may compute the value more than once.
+ */
+public class LruCache<K, V> {
+    private final int maxSize;
+    /** 0 for no expiry */
+    private final long ttlNanos;
+    private final Map<K, Item<V>> map;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** @param ttl null for no expiry */
+    public LruCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("invalid max size: " + maxSize);
+        }
+        this.maxSize = maxSize;
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        this.map = new LinkedHashMap<K, Item<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Item<V>> eldest) {
+                if (size() > LruCache.this.maxSize) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /** @return null if not found or expired */
+    public synchronized V get(K key) {
+        Item<V> entry;
+
+        entry = map.get(key);
+        if (entry != null && ttlNanos != 0 && System.nanoTime() - entry.created > ttlNanos) {
+            map.remove(key);
+            evictions++;
+            entry = null;
+        }
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    public synchronized void put(K key, V value) {
+        map.put(key, new Item<>(value, System.nanoTime()));
+    }
+
+    public synchronized void clear() {
+        map.clear();
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /** @return entries removed because the cache was full or because they expired */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "hits=" + hits + " misses=" + misses + " evictions=" + evictions + " size=" + map.size();
+    }
+
+    private static class Item<V> {
+        public final V value;
+        public final long created;
+
+        Item(V value, long created) {
+            this.value = value;
+            this.created = created;
+        }
+    }
+}
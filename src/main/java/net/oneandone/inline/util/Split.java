@@ -15,34 +15,72 @@
  */
 package net.oneandone.inline.util;
 
+import net.oneandone.inline.ArgumentException;
 import net.oneandone.inline.internal.InvalidCliException;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public class Split {
+    private static final char ESCAPE = '§';
+
+    /**
+     * Splits syntax and mapping definitions into words separated by spaces. Single or double quotes group characters
+     * including spaces; §xx is the character with hex code xx, also within quotes. Single pass: words without quotes
+     * and escapes are substrings of str, other words are assembled in a buffer shared by all words.
+     */
     public static List<String> split(String str) {
         List<String> result;
-        int idx;
+        StringBuilder buffer;
         int max;
-        int next;
+        int start;
+        boolean buffered;
+        char quote;
+        char c;
+        int i;
 
         result = new ArrayList<>();
-        idx = 0;
+        buffer = null;
         max = str.length();
+        i = 0;
         while (true) {
-            while (idx < max && str.charAt(idx) == ' ') {
-                idx++;
+            while (i < max && str.charAt(i) == ' ') {
+                i++;
             }
-            next = str.indexOf(' ', idx);
-            if (next == -1) {
-                if (idx < max) {
-                    result.add(escape(str.substring(idx, max)));
-                }
+            if (i == max) {
                 return result;
             }
-            result.add(escape(str.substring(idx, next)));
-            idx = next + 1;
+            start = i;
+            buffered = false;
+            quote = 0;
+            for (; i < max; i++) {
+                c = str.charAt(i);
+                if (quote == 0 && c == ' ') {
+                    break;
+                }
+                if (c == ESCAPE || (quote == 0 ? c == '"' || c == '\'' : c == quote)) {
+                    if (!buffered) {
+                        if (buffer == null) {
+                            buffer = new StringBuilder();
+                        }
+                        buffer.setLength(0);
+                        buffer.append(str, start, i);
+                        buffered = true;
+                    }
+                    if (c == ESCAPE) {
+                        buffer.append(decode(str, i));
+                        i += 2;
+                    } else {
+                        quote = quote == 0 ? c : 0;
+                    }
+                } else if (buffered) {
+                    buffer.append(c);
+                }
+            }
+            if (quote != 0) {
+                throw new InvalidCliException("unterminated quote in " + str);
+            }
+            result.add(buffered ? buffer.toString() : str.substring(start, i));
         }
     }
 
@@ -51,22 +89,95 @@ public class Split {
         int idx;
         StringBuilder result;
 
-        idx = str.indexOf('§');
+        idx = str.indexOf(ESCAPE);
         if (idx == -1) {
             return str;
         }
         prev = 0;
         result = new StringBuilder(str.length());
         do {
-            result.append(str.substring(prev, idx));
-            if (idx + 3 > str.length()) {
-                throw new InvalidCliException("invalid $ constant in " + str);
-            }
-            result.append((char) Integer.parseInt(str.substring(idx + 1, idx + 3), 16));
+            result.append(str, prev, idx);
+            result.append(decode(str, idx));
             prev = idx + 3;
-            idx = str.indexOf('§', prev);
+            idx = str.indexOf(ESCAPE, prev);
         } while (idx != -1);
-        result.append(str.substring(prev));
+        result.append(str, prev, str.length());
         return result.toString();
     }
+
+    /** @param idx position of the escape character */
+    private static char decode(String str, int idx) {
+        int high;
+        int low;
+
+        if (idx + 3 > str.length()) {
+            throw new InvalidCliException("invalid § constant in " + str);
+        }
+        high = Character.digit(str.charAt(idx + 1), 16);
+        low = Character.digit(str.charAt(idx + 2), 16);
+        if (high == -1 || low == -1) {
+            throw new InvalidCliException("invalid § constant in " + str);
+        }
+        return (char) (high * 16 + low);
+    }
+
+    /**
+     * Splits a command line the way a shell does: words are separated by whitespace, single quotes preserve all
+     * characters, double quotes preserve all characters except backslash escapes, a backslash outside of quotes
+     * escapes the next character. Quoted and unquoted parts of a word are concatenated; "" is an empty word.
+     */
+    public static List<String> line(String str) {
+        List<String> result;
+        StringBuilder word;
+        boolean inWord;
+        char quote;
+        char c;
+
+        result = new ArrayList<>();
+        word = new StringBuilder();
+        inWord = false;
+        quote = 0;
+        for (int i = 0, max = str.length(); i < max; i++) {
+            c = str.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\\' && quote != '\'') {
+                i++;
+                if (i == max) {
+                    throw new ArgumentException("backslash at end of line");
+                }
+                word.append(str.charAt(i));
+                inWord = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    word.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                inWord = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inWord) {
+                    result.add(word.toString());
+                    word.setLength(0);
+                    inWord = false;
+                }
+            } else {
+                word.append(c);
+                inWord = true;
+            }
+        }
+        if (quote != 0) {
+            throw new ArgumentException("unterminated quote: " + quote);
+        }
+        if (inWord) {
+            result.add(word.toString());
+        }
+        return result;
+    }
 }
@@ -0,0 +1,107 @@
+#!/usr/bin/env bash
+#
+# Copyright 1&1 Internet AG, https://github.com/1and1/
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#     http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# Launcher that runs a command in a Daemon without starting a jvm; same protocol as Client.java.
+# Needs bash (for /dev/tcp) and GNU dd.
+#
+#    client.sh addressFile args...
+
+if [ $# -eq 0 ]; then
+    echo "usage: client.sh addressFile args..." >&2
+    exit 2
+fi
+read -r port token < "$1" || { echo "$1: cannot read address file" >&2; exit 2; }
+shift
+
+# capture the environment before changing the locale
+names=($(compgen -e))
+values=()
+for name in "${names[@]}"; do
+    values+=("${!name}")
+done
+# byte lengths for ${#...}
+LC_ALL=C
+
+# 4 bytes, big endian; printf -v saves forks
+int() {
+    local a b c d
+
+    printf -v a '\\%03o' $(( ($1 >> 24) & 255 ))
+    printf -v b '\\%03o' $(( ($1 >> 16) & 255 ))
+    printf -v c '\\%03o' $(( ($1 >> 8) & 255 ))
+    printf -v d '\\%03o' $(( $1 & 255 ))
+    printf "$a$b$c$d"
+}
+
+# length in bytes, bytes
+string() {
+    int ${#1}
+    printf %s "$1"
+}
+
+exec 3<>/dev/tcp/127.0.0.1/"$port" || exit 1
+exec 4<&0
+{
+    int 1
+    string "$token"
+    string "$PWD"
+    int ${#names[@]}
+    for i in "${!names[@]}"; do
+        string "${names[$i]}"
+        string "${values[$i]}"
+    done
+    int $#
+    for arg in "$@"; do
+        string "$arg"
+    done
+} >&3
+
+# forward stdin frames until end of input
+(
+    trap 'kill $! 2>/dev/null; exit' TERM
+    frame=$(mktemp)
+    trap 'rm -f "$frame"' EXIT
+    while :; do
+        dd bs=8192 count=1 status=none of="$frame" <&4 &
+        wait $!
+        len=$(wc -c < "$frame")
+        int $len
+        [ "$len" -eq 0 ] && break
+        cat "$frame"
+    done >&3
+) &
+pump=$!
+
+# relay stdout and stderr frames until the exit code arrives
+while :; do
+    set -- $(dd bs=1 count=5 status=none <&3 | od -An -tu1)
+    if [ $# -ne 5 ]; then
+        echo "daemon disconnected" >&2
+        kill $pump 2>/dev/null
+        exit 1
+    fi
+    len=$(( ($2 << 24) | ($3 << 16) | ($4 << 8) | $5 ))
+    case $1 in
+        1)  dd bs=$len count=1 iflag=fullblock status=none <&3 ;;
+        2)  dd bs=$len count=1 iflag=fullblock status=none <&3 >&2 ;;
+        3)  kill $pump 2>/dev/null
+            exit $(( len & 255 )) ;;
+        *)  echo "unknown channel: $1" >&2
+            kill $pump 2>/dev/null
+            exit 1 ;;
+    esac
+done
@@ -17,18 +17,37 @@ package net.oneandone.inline;
 
 import net.oneandone.inline.ArgumentException;
 import net.oneandone.inline.Cli;
+import net.oneandone.inline.internal.Actuals;
+import net.oneandone.inline.internal.ArgumentFiles;
 import net.oneandone.inline.internal.ContextBuilder;
+import net.oneandone.inline.internal.InvalidCliException;
+import net.oneandone.inline.util.LruCache;
 import net.oneandone.sushi.util.Strings;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -158,6 +177,133 @@ public class CliTest {
         }
     }
 
+    @Test
+    public void arrays() throws Throwable {
+        ContextBuilder parser;
+        ArrayValues arrays;
+
+        parser = parser(ArrayValues.class, "-d=1.5 -count=0 ints* -longs* -flags* { longs=longs d=d count(count) flags=flags }");
+        arrays = (ArrayValues) parser.run(new HashMap<>());
+        assertEquals(0, arrays.ints.length);
+        assertEquals(0, arrays.longs.length);
+        assertEquals(1.5, arrays.d, 0.0);
+        assertEquals(0, arrays.count);
+        arrays = (ArrayValues) parser.run(new HashMap<>(), "-longs", "5", "-longs", "6", "-d", "2.5", "-count", "3", "-flags", "true", "1", "2", "3");
+        assertEquals(3, arrays.ints.length);
+        assertEquals(3, arrays.ints[2]);
+        assertEquals(6L, arrays.longs[1]);
+        assertEquals(2.5, arrays.d, 0.0);
+        assertEquals(3, arrays.count);
+        assertTrue(arrays.flags[0]);
+        try {
+            parser.run(new HashMap<>(), "1", "x");
+            fail();
+        } catch (ArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("expected integer"));
+        }
+    }
+
+    @Test
+    public void argumentFiles() throws Throwable {
+        File file;
+        ContextBuilder parser;
+        Streamed streamed;
+        List<Integer> lst;
+        ArgumentFiles files;
+        Iterator<String> iter;
+
+        file = File.createTempFile("args", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), "1\n\n2\n".getBytes(StandardCharsets.UTF_8));
+        parser = parser(Streamed.class, "nums* -item* { item*(item) }");
+        streamed = (Streamed) parser.run(actuals("4\n"), Arrays.asList("-item", "@" + file.getPath(), "-item", "3", "@" + file.getPath(), "-"));
+        assertEquals(Arrays.asList("1", "2", "3"), streamed.items);
+        lst = new ArrayList<>();
+        for (Integer i : streamed.nums) {
+            lst.add(i);
+        }
+        assertEquals(Arrays.asList("1", "2", "4").toString(), lst.toString());
+        try {
+            streamed.nums.iterator();
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("only once"));
+        }
+        files = new ArgumentFiles(new ByteArrayInputStream(new byte[0]));
+        iter = files.iterator(Arrays.asList("@" + file.getPath(), "x"));
+        assertEquals("1", iter.next());
+        files.close();
+        assertEquals("x", iter.next());
+        assertFalse(iter.hasNext());
+        streamed = (Streamed) parser.run(actuals(""), Arrays.asList("-item", "@@x"));
+        assertEquals(Arrays.asList("@x"), streamed.items);
+        streamed = (Streamed) parser.run(new HashMap<>(), "-item", "@@x");
+        assertEquals(Arrays.asList("@@x"), streamed.items);
+    }
+
+    private static Actuals actuals(String stdin) {
+        return new Actuals(new HashMap<>(), new ArgumentFiles(new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    public void bases() {
+        Cli cli;
+
+        lastDerived = null;
+        cli = Cli.create("no help text");
+        cli.base(Level1.class, "-a=1 { level1=a }")
+                .base(Level2.class, "-b { setB(b) }")
+                    .add(Derived.class, "derived c");
+        assertEquals(0, cli.run("derived", "-b", "2", "3"));
+        assertEquals(1, lastDerived.level1);
+        assertEquals(2, lastDerived.b);
+        assertEquals(3, lastDerived.c);
+        try {
+            cli.add(Derived.class, "dup -a c");
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("duplicate argument: a"));
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void deprecatedBase() {
+        Base base;
+
+        base = new Base(new Base(null, "-a=1", ""), "-b", "setB(b)");
+        assertEquals("-a=1 -b c", base.fullSyntax("c"));
+        assertEquals(" setB(b) level1=a", base.fullMapping("level1=a"));
+        assertEquals(2, base.sources(Collections.emptyList()).size());
+        assertTrue(base.mapping("", Derived.class).contains("b"));
+    }
+
+    private static Derived lastDerived;
+
+    public static class Level1 {
+        public int level1;
+    }
+
+    public static class Level2 extends Level1 {
+        public int b;
+
+        public void setB(int b) {
+            this.b = b;
+        }
+    }
+
+    public static class Derived extends Level2 {
+        public final int c;
+
+        public Derived(int c) {
+            this.c = c;
+        }
+
+        public void run() {
+            lastDerived = this;
+        }
+    }
+
     @Test
     public void contextClass() {
         Cli cli;
@@ -173,6 +319,553 @@ public class CliTest {
         assertEquals(2, lastWithContext.l);
     }
 
+    @Test
+    public void commands() {
+        Cli cli;
+
+        cli = Cli.create("no help text");
+        for (int i = 0; i < 100; i++) {
+            cli.add(Empty.class, "cmd" + i);
+        }
+        assertEquals(102, cli.commands.size());
+        assertEquals("help", cli.commands.get(0).getName());
+        assertEquals("cmd99", cli.commands.get(101).getName());
+        assertSame(cli.commands.get(52), cli.get("cmd50"));
+        assertNull(cli.lookup("cmd"));
+        try {
+            cli.add(Empty.class, "cmd7");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("duplicate command"));
+        }
+        try {
+            cli.commands.clear();
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void lazy() {
+        Cli cli;
+
+        lastWithContext = null;
+        cli = Cli.create("no help text").lazy(true);
+        cli.begin(Values.class, "first")
+                .add(WithContext.class, "cmd l")
+                .add(WithContext.class, "broken l nosuchargument")
+           .end();
+        assertEquals(4, cli.commands.size());
+        cli.run("cmd", "42", "2");
+        assertEquals(42, lastWithContext.values.first);
+        assertEquals(2, lastWithContext.l);
+        try {
+            cli.validate();
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("no matching constructor"));
+        }
+    }
+
+    @Test
+    public void runAll() throws InterruptedException {
+        StringWriter output;
+        Cli cli;
+        List<List<String>> invocations;
+        StringBuilder expected;
+
+        output = new StringWriter();
+        cli = bufferedCli(output, "");
+        cli.add(Echo.class, "echo n");
+        invocations = new ArrayList<>();
+        expected = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            invocations.add(Arrays.asList("echo", Integer.toString(i)));
+            expected.append("start " + i + "\nend " + i + "\n");
+        }
+        assertEquals(0, cli.runAll(invocations, 16));
+        assertEquals(expected.toString(), output.toString());
+        invocations.add(1, Arrays.asList("echo", "1007"));
+        invocations.add(2, Arrays.asList("echo", "1003"));
+        assertEquals(7, cli.runAll(invocations, 4));
+    }
+
+    @Test
+    public void timing() {
+        StringWriter output;
+        Cli cli;
+        List<Timing> timings;
+        Timing timing;
+
+        output = new StringWriter();
+        cli = bufferedCli(output, "");
+        cli.add(Echo.class, "echo n");
+        timings = new ArrayList<>();
+        cli.listener(timings::add);
+        assertEquals(3, cli.run("echo", "1003"));
+        assertEquals("start 1003\nend 1003\n", output.toString());
+        assertEquals(1, timings.size());
+        timing = timings.get(0);
+        assertEquals("echo", timing.getCommand());
+        assertEquals(3, timing.getExitCode());
+        for (Phase phase : Phase.values()) {
+            assertTrue(timing.getNanos(phase) >= 0);
+        }
+        assertTrue(timing.getNanos(Phase.RUN) > 0);
+        assertTrue(timing.getTotalNanos() >= timing.getNanos(Phase.RUN));
+        assertEquals(-1, cli.run("nosuchcommand"));
+        assertNull(timings.get(1).getCommand());
+
+        output.getBuffer().setLength(0);
+        assertEquals(0, cli.run("-timing", "echo", "2"));
+        assertTrue(output.toString(), output.toString().startsWith("start 2\nend 2\ntiming echo:\n  compile "));
+        assertTrue(output.toString(), output.toString().contains("\n  convert "));
+        assertTrue(output.toString(), output.toString().contains("\n  total "));
+    }
+
+    @Test
+    public void bulk() {
+        StringWriter output;
+        Cli cli;
+        List<Integer> calls;
+
+        output = new StringWriter();
+        calls = new ArrayList<>();
+        cli = bufferedCli(output, "");
+        cli.primitive(Id.class, "id", null, Id::new);
+        cli.bulkPrimitive(Id.class, strings -> {
+            List<Id> result;
+
+            calls.add(strings.size());
+            result = new ArrayList<>(strings.size());
+            for (String str : strings) {
+                if (str.isEmpty()) {
+                    throw new IllegalArgumentException("empty id");
+                }
+                if (str.equals("skip")) {
+                    continue;
+                }
+                result.add(new Id(str.toUpperCase()));
+            }
+            return result;
+        });
+        cli.parallelPrimitive(Integer.class);
+        cli.add(Ids.class, "ids -first=a -n* id*");
+        lastIds = null;
+        assertEquals(0, cli.run("ids", "-first", "x", "-n", "1", "-n", "2", "a", "b", "c"));
+        assertEquals(Arrays.asList(3), calls);
+        assertEquals("x", lastIds.first.value);
+        assertEquals(Arrays.asList(1, 2), lastIds.numbers);
+        assertEquals("A", lastIds.ids.get(0).value);
+        assertEquals("C", lastIds.ids.get(2).value);
+        assertEquals(-1, cli.run("ids", "a", ""));
+        assertTrue(output.toString(), output.toString().startsWith("invalid argument id: expected id: empty id\n"));
+        output.getBuffer().setLength(0);
+        try {
+            cli.run("ids", "a", "skip");
+            fail();
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(" returned 1 values for 2 strings"));
+        }
+        assertEquals(-1, cli.run("ids", "-n", "1", "-n", "x", "-n", "3", "-n", "y"));
+        assertTrue(output.toString(), output.toString().startsWith("invalid argument n: expected integer, got 'x"));
+    }
+
+    private static Ids lastIds;
+
+    public static class Id {
+        public final String value;
+
+        public Id(String value) {
+            this.value = value;
+        }
+    }
+
+    public static class Ids {
+        public final Id first;
+        public final List<Integer> numbers;
+        public final List<Id> ids;
+
+        public Ids(Id first, List<Integer> n, List<Id> id) {
+            this.first = first;
+            this.numbers = n;
+            this.ids = id;
+        }
+
+        public void run() {
+            lastIds = this;
+        }
+    }
+
+    @Test
+    public void parallelConversion() {
+        StringWriter output;
+        Cli cli;
+        ExecutorService executor;
+
+        output = new StringWriter();
+        executor = Executors.newFixedThreadPool(3);
+        try {
+            cli = bufferedCli(output, "");
+            cli.primitive(Slow.class, "slow value", null, Slow::new);
+            cli.parallelConversion(executor);
+            cli.add(Slows.class, "slows a b c");
+            Slow.latch = new CountDownLatch(3);
+            lastSlows = null;
+            assertEquals(0, cli.run("slows", "1", "2", "3"));
+            assertEquals("3", lastSlows.c.value);
+
+            // the second value fails first, but the first one is reported
+            Slow.latch = new CountDownLatch(0);
+            assertEquals(-1, cli.run("slows", "bad-slowly", "bad", "3"));
+            assertTrue(output.toString(), output.toString().startsWith("invalid argument a: expected slow value, got 'bad-slowly"));
+
+            // invalid values are reported before missing values of later arguments, as in sequential mode
+            output.getBuffer().setLength(0);
+            cli.add(SlowList.class, "slowlist a b c+");
+            assertEquals(-1, cli.run("slowlist", "bad", "2"));
+            assertTrue(output.toString(), output.toString().startsWith("invalid argument a: expected slow value, got 'bad"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static Slows lastSlows;
+
+    public static class Slow {
+        public static volatile CountDownLatch latch;
+
+        public final String value;
+
+        /** waits until all values are being parsed, i.e. fails if they're parsed sequentially */
+        public Slow(String value) {
+            latch.countDown();
+            try {
+                if (!latch.await(10, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("not concurrent");
+                }
+                if (value.equals("bad-slowly")) {
+                    Thread.sleep(100);
+                }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (value.startsWith("bad")) {
+                throw new IllegalArgumentException(value);
+            }
+            this.value = value;
+        }
+    }
+
+    public static class SlowList {
+        public SlowList(Slow a, Slow b, List<Slow> c) {
+        }
+
+        public void run() {
+        }
+    }
+
+    public static class Slows {
+        public final Slow a;
+        public final Slow b;
+        public final Slow c;
+
+        public Slows(Slow a, Slow b, Slow c) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+        }
+
+        public void run() {
+            lastSlows = this;
+        }
+    }
+
+    @Test
+    public void shell() {
+        StringWriter output;
+        Cli cli;
+        String script;
+
+        output = new StringWriter();
+        script = "echo 1\n\n# comment\n'echo' \"2\"\n!1\nhistory\necho 'x\nnosuchcommand\necho 1003\n";
+        cli = bufferedCli(output, script);
+        cli.add(Echo.class, "echo n");
+        assertEquals(3, cli.shell(""));
+        assertEquals("start 1\nend 1\n"
+                + "start 2\nend 2\n"
+                + "echo 1\nstart 1\nend 1\n"
+                + "1  echo 1\n2  'echo' \"2\"\n3  echo 1\n4  history\n"
+                + "unterminated quote: '\n"
+                + "command not found: nosuchcommand\nSpecify 'help' to get a usage message.\n"
+                + "start 1003\nend 1003\n", output.toString());
+
+        output.getBuffer().setLength(0);
+        cli = bufferedCli(output, "help\nexit 5\necho 1\n");
+        assertEquals(5, cli.shell("> "));
+        assertEquals("> no help text\n> ", output.toString());
+    }
+
+    /** @return cli writing info and error output to output, reading the specified input */
+    private static Cli bufferedCli(StringWriter output, String stdin) {
+        PrintWriter writer;
+
+        writer = new PrintWriter(output, true);
+        return Cli.create(new Console(writer, writer, new ByteArrayInputStream(stdin.getBytes(StandardCharsets.UTF_8))), "no help text");
+    }
+
+    @Test
+    public void scopes() throws Exception {
+        Cli cli;
+
+        Pool.created = 0;
+        cli = Cli.create("no help text");
+        cli.begin(Pool.class, "", Scope.SINGLETON)
+                .begin("lazy", Pool.class, "", Scope.LAZY)
+                    .add(UsesPool.class, "cmd l");
+        assertEquals(1, Pool.created);
+        lastUsesPool = null;
+        cli.run("cmd", "1");
+        assertEquals(2, Pool.created);
+        assertEquals(2, lastUsesPool.pool.id);
+        cli.run("cmd", "2");
+        assertEquals(2, Pool.created);
+        assertEquals(2, lastUsesPool.pool.id);
+        cli.close();
+        assertTrue(lastUsesPool.pool.closed);
+        try {
+            Cli.create("no help text").begin(Values.class, "first", Scope.LAZY).add(Empty.class, "cmd");
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("must not have arguments"));
+        }
+        try {
+            Cli.create("no help text").begin(Values.class, "first").begin(WithValues.class, "", Scope.SINGLETON);
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("depends on per-invocation context"));
+        }
+        try {
+            // run(Console, args) replaces the console
+            Cli.create("no help text").begin(Log.class, "", Scope.LAZY).add(Empty.class, "cmd");
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("depends on per-invocation context"));
+        }
+    }
+
+    @Test
+    public void memoized() throws Exception {
+        Cli cli;
+        LruCache<?, ?> memo;
+        Pool a;
+
+        Pool.created = 0;
+        cli = Cli.create("no help text");
+        cli.memoize(2, null);
+        cli.begin("inventory", new Inventory(), "")
+                .begin("pool", "inventory.lookup", "name", Scope.MEMOIZED)
+                    .add(UsesPool.class, "cmd l");
+        cli.run("cmd", "a", "1");
+        a = lastUsesPool.pool;
+        cli.run("cmd", "a", "2");
+        assertSame(a, lastUsesPool.pool);
+        cli.run("cmd", "b", "3");
+        assertEquals(2, Pool.created);
+        memo = cli.memos().get("pool");
+        assertEquals(1, memo.getHits());
+        assertEquals(2, memo.getMisses());
+        cli.run("cmd", "c", "4");
+        cli.run("cmd", "a", "5");
+        assertEquals(4, Pool.created);
+        assertEquals(2, memo.getEvictions());
+        assertEquals(2, memo.size());
+        try {
+            Cli.create("no help text").begin(Values.class, "first third { third(third) }", Scope.MEMOIZED).add(Empty.class, "cmd");
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("must not have arguments set on the object"));
+        }
+        try {
+            Cli.create("no help text")
+                    .begin("inventory", Inventory.class, "-host { host=host }")
+                    .begin("pool", "inventory.lookup", "name", Scope.MEMOIZED)
+                    .add(UsesPool.class, "cmd l");
+            fail();
+        } catch (InvalidCliException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("memoized context pool depends on per-invocation context inventory"));
+        }
+    }
+
+    public static class Inventory {
+        public String host;
+
+        public Pool lookup(String name) {
+            return new Pool();
+        }
+
+        public Pool lookupAll(String[] names) {
+            return new Pool();
+        }
+    }
+
+    @Test
+    public void memoizedArrays() throws Exception {
+        Cli cli;
+        Pool a;
+
+        Pool.created = 0;
+        cli = Cli.create("no help text");
+        cli.begin("inventory", new Inventory(), "")
+                .begin("pool", "inventory.lookupAll", "-name*", Scope.MEMOIZED)
+                    .add(UsesPool.class, "cmd l");
+        cli.run("cmd", "-name", "a", "-name", "b", "1");
+        a = lastUsesPool.pool;
+        cli.run("cmd", "-name", "a", "-name", "b", "2");
+        assertSame(a, lastUsesPool.pool);
+        cli.run("cmd", "-name", "a", "3");
+        assertEquals(2, Pool.created);
+        assertEquals(1, cli.memos().get("pool").getHits());
+        assertEquals(2, cli.memos().get("pool").size());
+    }
+
+    @Test
+    public void unusedContexts() {
+        Cli cli;
+
+        Pool.created = 0;
+        cli = Cli.create("no help text");
+        cli.begin(Pool.class, "")
+                .begin(Values.class, "first")
+                    .add(Empty.class, "empty")
+                    .add(UsesPool.class, "pool l")
+                    .add(WithContext.class, "values l");
+        assertEquals(0, cli.run("empty", "1"));
+        assertEquals(0, Pool.created);
+        assertEquals(0, cli.run("values", "1", "2"));
+        assertEquals(0, Pool.created);
+        assertEquals(1, lastWithContext.values.first);
+        assertEquals(0, cli.run("pool", "1", "2"));
+        assertEquals(1, Pool.created);
+        assertEquals(-1, cli.run("empty", "x"));
+    }
+
+    public static class Log {
+        public final Console console;
+
+        public Log(Console console) {
+            this.console = console;
+        }
+    }
+
+    public static class Pool implements AutoCloseable {
+        public static int created;
+
+        public final int id;
+        public boolean closed;
+
+        public Pool() {
+            this.id = ++created;
+            this.closed = false;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    public static class WithValues {
+        public WithValues(Values values) {
+        }
+    }
+
+    private static UsesPool lastUsesPool;
+
+    public static class UsesPool {
+        public final Pool pool;
+
+        public UsesPool(Pool pool, long l) {
+            this.pool = pool;
+        }
+
+        public void run() {
+            lastUsesPool = this;
+        }
+    }
+
+    public static class Echo {
+        private final Console console;
+        private final int n;
+
+        public Echo(Console console, int n) {
+            this.console = console;
+            this.n = n;
+        }
+
+        public int run() {
+            console.info.println("start " + n);
+            Thread.yield();
+            console.info.println("end " + n);
+            return n >= 1000 ? n - 1000 : 0;
+        }
+    }
+
+    @Test
+    public void reflectConfig() {
+        Cli cli;
+        String json;
+
+        cli = Cli.create("no help text");
+        cli.begin(Values.class, "first second third { second=second third(third) }")
+                .add(WithContext.class, "cmd l")
+           .end();
+        json = cli.reflectConfig();
+        assertTrue(json, json.contains("\"name\": \"net.oneandone.inline.CliTest$WithContext\""));
+        assertTrue(json, json.contains("{ \"name\": \"<init>\", \"parameterTypes\": [ \"net.oneandone.inline.CliTest$Values\", \"long\" ] }"));
+        assertTrue(json, json.contains("{ \"name\": \"second\", \"allowWrite\": true }"));
+        assertTrue(json, json.contains("{ \"name\": \"third\", \"parameterTypes\": [ \"java.lang.String\" ] }"));
+        assertTrue(json, json.contains("\"name\": \"net.oneandone.inline.CliTest$Color\""));
+        assertTrue(json, json.contains("{ \"name\": \"setVerbose\", \"parameterTypes\": [ \"boolean\" ] }"));
+        assertTrue(json, json.contains("{ \"name\": \"run\", \"parameterTypes\": [] }"));
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        final Cli cli;
+        ExecutorService executor;
+        List<Future<String>> futures;
+        final int count = 8;
+
+        cli = Cli.create("no help text");
+        cli.begin(Values.class, "first")
+                .add(Sum.class, "sum -offset=0 second more*")
+           .end();
+        executor = Executors.newFixedThreadPool(count);
+        futures = new ArrayList<>();
+        for (int t = 0; t < count; t++) {
+            final int id = t;
+            futures.add(executor.submit(() -> {
+                int expected;
+                int got;
+
+                for (int i = 0; i < 500; i++) {
+                    expected = id * 1000 + i + id + 3;
+                    got = cli.run("sum", "-offset", Integer.toString(id), Integer.toString(id), Integer.toString(i), "a", "b", "c");
+                    if (got != expected) {
+                        return "thread " + id + ", run " + i + ": expected " + expected + ", got " + got;
+                    }
+                }
+                return null;
+            }));
+        }
+        executor.shutdown();
+        for (Future<String> future : futures) {
+            assertNull(future.get());
+        }
+    }
+
     //-- various command classes
 
     enum Color {
@@ -224,6 +917,60 @@ public class CliTest {
         }
     }
 
+    public static class Sum {
+        private final Values values;
+        private final int offset;
+        private final int second;
+        private final List<String> more;
+
+        public Sum(Values values, int offset, int second, List<String> more) {
+            this.values = values;
+            this.offset = offset;
+            this.second = second;
+            this.more = more;
+        }
+
+        public int run() {
+            return values.first * 1000 + second + offset + more.size();
+        }
+    }
+
+    public static class ArrayValues {
+        public final int[] ints;
+        public long[] longs;
+        public double d;
+        public int count;
+        public boolean[] flags;
+
+        public ArrayValues(int[] ints) {
+            this.ints = ints;
+        }
+
+        public void count(int count) {
+            this.count = count;
+        }
+
+        public void run() {
+        }
+    }
+
+    public static class Streamed {
+        public final Iterable<Integer> nums;
+        public final List<String> items;
+
+        public Streamed(Iterable<Integer> nums) {
+            this.nums = nums;
+            this.items = new ArrayList<>();
+        }
+
+        public void item(String item) {
+            items.add(item);
+        }
+
+        public void run() {
+        }
+    }
+
     private static WithContext lastWithContext;
 
     public static class WithContext {
@@ -0,0 +1,262 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.daemon;
+
+import net.oneandone.inline.Cli;
+import net.oneandone.inline.Console;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.junit.Assume.assumeTrue;
+
+public class DaemonTest {
+    @Test
+    public void concurrentClients() throws Exception {
+        StringWriter daemonOutput;
+        Path file;
+        ExecutorService executor;
+        List<Future<String>> futures;
+
+        daemonOutput = new StringWriter();
+        file = Files.createTempFile("inline", ".daemon");
+        try (Daemon daemon = new Daemon(cli(daemonOutput), file)) {
+            assertTrue(new String(Files.readAllBytes(file), StandardCharsets.UTF_8).startsWith(daemon.getPort() + " "));
+            executor = Executors.newFixedThreadPool(8);
+            futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                int n = i;
+                futures.add(executor.submit((Callable<String>) () -> invoke(file, "line" + n, "greet", "name" + n)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("0:hello name" + i + " in /tmp/" + i + "\nline" + i + "\n:", futures.get(i).get());
+            }
+            executor.shutdown();
+            assertEquals("0:hello\n:", invoke(file, "", "help"));
+            assertEquals("0:hello x in /tmp/x\n\nverbose\n:", invoke(file, "", "-v", "greet", "x"));
+            assertEquals("-1:Specify 'help' to get a usage message.\n:command not found: nosuchcommand\n", invoke(file, "", "nosuchcommand"));
+            assertEquals("", daemonOutput.toString());
+        }
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    public void invalidToken() throws Exception {
+        Path file;
+
+        file = Files.createTempFile("inline", ".daemon");
+        try (Daemon daemon = new Daemon(cli(new StringWriter()), file)) {
+            Files.write(file, (daemon.getPort() + " wrongtoken").getBytes(StandardCharsets.UTF_8));
+            try {
+                invoke(file, "", "help");
+                fail();
+            } catch (IOException e) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void relativePaths() throws Exception {
+        Path file;
+        Path dir;
+        Daemon daemon;
+
+        file = Files.createTempFile("inline", ".daemon");
+        dir = Files.createTempDirectory("inline");
+        Files.write(dir.resolve("names.txt"), "a\nb\n".getBytes(StandardCharsets.UTF_8));
+        daemon = new Daemon(cli(new StringWriter()), file);
+        try {
+            assertEquals("0:" + dir.resolve("out.txt") + " a b\n:", invoke(file, dir.toFile(), "", "show", "out.txt", "@names.txt"));
+        } finally {
+            daemon.close();
+            Files.delete(dir.resolve("names.txt"));
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void shellClient() throws Exception {
+        Path file;
+        Path script;
+        File dir;
+
+        assumeTrue(new File("/bin/bash").canExecute());
+        file = Files.createTempFile("inline", ".daemon");
+        script = Files.createTempFile("client", ".sh");
+        try (InputStream src = Daemon.class.getResourceAsStream("client.sh")) {
+            Files.copy(src, script, StandardCopyOption.REPLACE_EXISTING);
+        }
+        dir = new File(System.getProperty("java.io.tmpdir")).getCanonicalFile();
+        try (Daemon daemon = new Daemon(cli(new StringWriter()), file)) {
+            assertEquals("0:hello x in " + dir + "\nline\n:", shell(script, dir, file, "line", "greet", "x"));
+            assertEquals("0:hello\n:", shell(script, dir, file, "", "help"));
+            assertEquals("255:Specify 'help' to get a usage message.\n:command not found: nosuchcommand\n",
+                    shell(script, dir, file, "", "nosuchcommand"));
+            daemon.close();
+            assertTrue(shell(script, dir, file, "", "help").startsWith("2::"));
+        } finally {
+            Files.delete(script);
+        }
+    }
+
+    /** @return exitCode:stdout:stderr */
+    private static String shell(Path script, File dir, Path file, String stdin, String... args) throws Exception {
+        List<String> command;
+        ProcessBuilder builder;
+        Process process;
+        Future<byte[]> stderr;
+        byte[] stdout;
+        int exitCode;
+
+        command = new ArrayList<>(Arrays.asList("bash", script.toString(), file.toString()));
+        command.addAll(Arrays.asList(args));
+        builder = new ProcessBuilder(command).directory(dir);
+        builder.environment().put("GREETING", "hello");
+        process = builder.start();
+        stderr = Executors.newSingleThreadExecutor().submit(() -> readAll(process.getErrorStream()));
+        try (OutputStream dest = process.getOutputStream()) {
+            dest.write((stdin + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            // script has terminated without reading stdin
+        }
+        stdout = readAll(process.getInputStream());
+        exitCode = process.waitFor();
+        return exitCode + ":" + new String(stdout, StandardCharsets.UTF_8) + ":" + new String(stderr.get(), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream src) throws IOException {
+        ByteArrayOutputStream dest;
+        byte[] buffer;
+        int len;
+
+        dest = new ByteArrayOutputStream();
+        buffer = new byte[1024];
+        while ((len = src.read(buffer)) != -1) {
+            dest.write(buffer, 0, len);
+        }
+        return dest.toByteArray();
+    }
+
+    @Test
+    public void oversizedToken() throws Exception {
+        Path file;
+        DataOutputStream dest;
+
+        file = Files.createTempFile("inline", ".daemon");
+        try (Daemon daemon = new Daemon(cli(new StringWriter()), file)) {
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort())) {
+                socket.setSoTimeout(5000);
+                dest = new DataOutputStream(socket.getOutputStream());
+                dest.writeInt(Protocol.VERSION);
+                dest.writeInt(Integer.MAX_VALUE);
+                dest.flush();
+                // rejected without allocating the string
+                assertEquals(-1, socket.getInputStream().read());
+            }
+            assertEquals("0:hello\n:", invoke(file, "", "help"));
+        }
+    }
+
+    private static Cli cli(StringWriter output) {
+        PrintWriter writer;
+        Cli cli;
+
+        writer = new PrintWriter(output, true);
+        cli = Cli.create(new Console(writer, writer, new ByteArrayInputStream(new byte[0])), "hello");
+        cli.argumentFiles(true);
+        cli.add(Greet.class, "greet name");
+        cli.add(Show.class, "show file names*");
+        return cli;
+    }
+
+    /** @return exitCode:stdout:stderr */
+    private static String invoke(Path file, String stdin, String... args) throws IOException {
+        return invoke(file, new File("/tmp/" + (args.length > 1 ? args[args.length - 1].replace("name", "") : "")), stdin, args);
+    }
+
+    /** @return exitCode:stdout:stderr */
+    private static String invoke(Path file, File dir, String stdin, String... args) throws IOException {
+        ByteArrayOutputStream stdout;
+        ByteArrayOutputStream stderr;
+        int exitCode;
+
+        stdout = new ByteArrayOutputStream();
+        stderr = new ByteArrayOutputStream();
+        exitCode = Client.run(file, Arrays.asList(args), dir, Collections.singletonMap("GREETING", "hello"),
+                new ByteArrayInputStream((stdin + "\n").getBytes(StandardCharsets.UTF_8)), stdout, stderr);
+        return exitCode + ":" + new String(stdout.toByteArray(), StandardCharsets.UTF_8)
+                + ":" + new String(stderr.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public static class Greet {
+        private final Console console;
+        private final String name;
+
+        public Greet(Console console, String name) {
+            this.console = console;
+            this.name = name;
+        }
+
+        public void run() {
+            console.info.println(console.getEnv().get("GREETING") + " " + name + " in " + console.getWorkingDirectory().getPath());
+            console.info.println(console.input.nextLine());
+            console.verbose.println("verbose");
+        }
+    }
+
+    public static class Show {
+        private final Console console;
+        private final File file;
+        private final List<String> names;
+
+        public Show(Console console, File file, List<String> names) {
+            this.console = console;
+            this.file = file;
+            this.names = names;
+        }
+
+        public void run() {
+            console.info.println(file.getPath() + " " + String.join(" ", names));
+        }
+    }
+}
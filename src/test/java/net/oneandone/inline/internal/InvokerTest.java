@@ -0,0 +1,122 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class InvokerTest {
+    @Test
+    public void constructor() throws Throwable {
+        Invoker invoker;
+        Sample sample;
+
+        invoker = Invoker.forConstructor(Sample.class.getConstructor(String.class, int.class));
+        sample = (Sample) invoker.invokeAll(null, new Object[] { "a", 2 });
+        assertEquals("a", sample.str);
+        assertEquals(2, sample.i);
+    }
+
+    @Test
+    public void method() throws Throwable {
+        Sample sample;
+
+        sample = new Sample("a", 1);
+        assertEquals("a1", Invoker.forMethod(Sample.class.getMethod("get")).invoke(sample));
+        assertNull(Invoker.forMethod(Sample.class.getMethod("setI", int.class)).invoke(sample, 7));
+        assertEquals(7, sample.i);
+        assertEquals(3, Invoker.forMethod(Sample.class.getMethod("add", int.class, int.class)).invokeAll(null, new Object[] { 1, 2 }));
+    }
+
+    @Test
+    public void unboxed() throws Throwable {
+        Sample sample;
+
+        sample = new Sample("a", 1);
+        Invoker.forMethod(Sample.class.getMethod("setI", int.class)).invokeInt(sample, 5);
+        assertEquals(5, sample.i);
+        Invoker.forSetter(Sample.class.getDeclaredField("i")).invokeInt(sample, 6);
+        assertEquals(6, sample.i);
+        Invoker.forSetter(Sample.class.getDeclaredField("any")).invokeInt(sample, 7);
+        assertEquals(7, sample.any);
+    }
+
+    @Test
+    public void exceptionsNotWrapped() throws Throwable {
+        try {
+            Invoker.forMethod(Sample.class.getMethod("fail")).invoke(new Sample("a", 1));
+            fail();
+        } catch (IOException e) {
+            assertEquals("failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void setter() throws Throwable {
+        Sample sample;
+
+        sample = new Sample("a", 1);
+        Invoker.forSetter(Sample.class.getDeclaredField("str")).invoke(sample, "b");
+        assertEquals("b", sample.str);
+    }
+
+    @Test
+    public void finalFieldFallsBackToReflection() throws Throwable {
+        Field field;
+        Sample sample;
+
+        sample = new Sample("a", 1);
+        field = Sample.class.getDeclaredField("fin");
+        field.setAccessible(true);
+        Invoker.forSetter(field).invoke(sample, "changed");
+        assertEquals("changed", field.get(sample));
+    }
+
+    public static class Sample {
+        public static int add(int a, int b) {
+            return a + b;
+        }
+
+        public String str;
+        public Object any;
+        public int i;
+        private final String fin;
+
+        public Sample(String str, int i) {
+            this.str = str;
+            this.i = i;
+            this.fin = "final";
+        }
+
+        public String get() {
+            return str + i;
+        }
+
+        public void setI(int i) {
+            this.i = i;
+        }
+
+        public void fail() throws IOException {
+            throw new IOException("failed");
+        }
+    }
+}
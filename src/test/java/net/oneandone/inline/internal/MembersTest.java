@@ -0,0 +1,71 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MembersTest {
+    @Test
+    public void cached() {
+        assertSame(Members.get(Sample.class), Members.get(Sample.class));
+    }
+
+    @Test
+    public void lookup() {
+        Members members;
+
+        members = Members.get(Sample.class);
+        assertEquals(2, members.declaredConstructors().size());
+        assertEquals(2, members.methods("set").size());
+        assertEquals(1, members.methods("toString").size());
+        assertTrue(members.methods("hidden").isEmpty());
+        assertNotNull(members.declaredField("value"));
+        assertNull(members.declaredField("nosuchfield"));
+    }
+
+    public static class Sample {
+        private String value;
+
+        public Sample() {
+        }
+
+        public Sample(String value) {
+            this.value = value;
+        }
+
+        public void set(String value) {
+            this.value = value;
+        }
+
+        public void set(int value) {
+            this.value = Integer.toString(value);
+        }
+
+        private void hidden() {
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
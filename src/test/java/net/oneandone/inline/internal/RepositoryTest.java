@@ -0,0 +1,161 @@
+/*
+ * Copyright 1&1 Internet AG, https://github.com/1and1/
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.oneandone.inline.internal;
+
+import net.oneandone.inline.util.LruCache;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class RepositoryTest {
+    public enum Mode {
+        FAST, VERY_SLOW
+    }
+
+    @Test
+    public void enums() {
+        Primitive primitive;
+
+        primitive = new Repository().get(Mode.class);
+        assertEquals(Mode.FAST, primitive.parse("fast"));
+        assertEquals(Mode.VERY_SLOW, primitive.parse("very-slow"));
+        assertEquals(Mode.VERY_SLOW, primitive.parse("VERY_SLOW"));
+        assertEquals(Mode.FAST, primitive.defaultValue());
+        assertEquals("'fast' or 'very-slow'", primitive.expected);
+        try {
+            primitive.parse("slow");
+            fail();
+        } catch (RuntimeException e) {
+            // ok
+        }
+    }
+
+    public interface Shape {
+    }
+
+    public static class Circle implements Shape {
+        public final String arg;
+
+        public Circle(String arg) {
+            this.arg = arg;
+        }
+    }
+
+    public static class Square extends Circle {
+        public Square(String arg) {
+            super(arg);
+        }
+    }
+
+    @Test
+    public void supertypes() {
+        Repository repository;
+
+        repository = new Repository();
+        repository.registerSupertype(Shape.class, clazz -> new Primitive(clazz, "shape", null, str -> new Circle(clazz.getSimpleName() + ":" + str)));
+        assertEquals("Circle:x", ((Circle) repository.get(Circle.class).parse("x")).arg);
+        assertEquals("Square:y", ((Circle) repository.get(Square.class).parse("y")).arg);
+        assertSame(repository.get(Square.class), repository.get(Square.class));
+        repository.register(Square.class, "square", null, Square::new);
+        assertEquals("z", ((Circle) repository.get(Square.class).parse("z")).arg);
+        try {
+            repository.get(Object.class);
+            fail();
+        } catch (InvalidCliException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void cached() {
+        Repository repository;
+        AtomicInteger parsed;
+        Primitive primitive;
+        LruCache<String, Object> cache;
+
+        repository = new Repository();
+        parsed = new AtomicInteger();
+        repository.register(Circle.class, "circle", null, str -> {
+            parsed.incrementAndGet();
+            return new Circle(str);
+        });
+        primitive = repository.cache(Circle.class, 2, null);
+        assertSame(primitive, repository.get(Circle.class));
+        assertSame(primitive.parse("a"), primitive.parse("a"));
+        primitive.parse("b");
+        primitive.parse("c");
+        assertEquals("a", ((Circle) primitive.parse("a")).arg);
+        assertEquals(4, parsed.get());
+        cache = repository.caches().get(Circle.class);
+        assertEquals(1, cache.getHits());
+        assertEquals(4, cache.getMisses());
+        assertEquals(2, cache.getEvictions());
+        try {
+            repository.cache(Integer.TYPE, 10, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            primitive.bulk(strings -> strings);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        try {
+            new Primitive(Circle.class, "circle", null, Circle::new).bulk(strings -> strings).cached(10, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        repository.registerSupertype(Shape.class, clazz -> new Primitive(clazz, "shape", null, Circle::new));
+        try {
+            repository.cache(Shape.class, 10, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        repository.cache(Square.class, 10, null);
+        assertEquals(2, repository.caches().size());
+    }
+
+    @Test
+    public void concurrent() throws Exception {
+        Repository repository;
+        ExecutorService executor;
+        List<Future<Primitive>> futures;
+
+        repository = new Repository();
+        executor = Executors.newFixedThreadPool(8);
+        futures = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(executor.submit(() -> repository.get(Mode.class)));
+        }
+        for (Future<Primitive> future : futures) {
+            assertEquals(Mode.FAST, future.get().parse("fast"));
+        }
+        executor.shutdown();
+    }
+}
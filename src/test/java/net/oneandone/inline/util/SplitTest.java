@@ -15,11 +15,14 @@
  */
 package net.oneandone.inline.util;
 
+import net.oneandone.inline.ArgumentException;
+import net.oneandone.inline.internal.InvalidCliException;
 import org.junit.Test;
 
 import java.util.Arrays;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 public class SplitTest {
     @Test
@@ -43,10 +46,48 @@ public class SplitTest {
         check(" 1  2" , "1", "2");
         check("1 2 ", "1", "2");
     }
+    @Test
+    public void quoted() {
+        check("'a b' \"c'd\"", "a b", "c'd");
+        check("x='1 2'y §22\"§20\"", "x=1 2y", "\" ");
+        check("''", "");
+        try {
+            Split.split("a 'b");
+            fail();
+        } catch (InvalidCliException e) {
+            // ok
+        }
+        try {
+            Split.split("a§2x");
+            fail();
+        } catch (InvalidCliException e) {
+            // ok
+        }
+    }
+
     private void check(String str, String ... expected) {
         assertEquals(Arrays.asList(expected), Split.split(str));
     }
 
+    @Test
+    public void line() {
+        checkLine("");
+        checkLine(" a  b\t", "a", "b");
+        checkLine("'a b' \"c d\"", "a b", "c d");
+        checkLine("a'b'\"c\" '' \"\"", "abc", "", "");
+        checkLine("'\\' \"\\\"'\" a\\ b", "\\", "\"'", "a b");
+        try {
+            Split.line("'a");
+            fail();
+        } catch (ArgumentException e) {
+            // ok
+        }
+    }
+
+    private void checkLine(String str, String ... expected) {
+        assertEquals(Arrays.asList(expected), Split.line(str));
+    }
+
     @Test
     public void escape() {
         assertEquals("f bA", Split.escape("f§20b§41"));